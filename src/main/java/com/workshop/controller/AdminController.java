@@ -0,0 +1,211 @@
+package com.workshop.controller;
+
+import com.workshop.dto.ApiResponse;
+import com.workshop.dto.admin.BanUserRequest;
+import com.workshop.security.BoundedPasswordEncoder;
+import com.workshop.security.RateLimiter;
+import com.workshop.security.TokenRevocationService;
+import com.workshop.service.BalanceReconciler;
+import com.workshop.service.CheckinBitmap;
+import com.workshop.service.CheckinHistoryService;
+import com.workshop.service.DailyTaskEngine;
+import com.workshop.service.HotAccountService;
+import com.workshop.service.HotMapRanking;
+import com.workshop.service.LedgerAppender;
+import com.workshop.service.LedgerArchiver;
+import com.workshop.service.LevelRebuilder;
+import com.workshop.service.MapSearchIndex;
+import com.workshop.service.MapViewCounter;
+import com.workshop.service.RewardJournal;
+import com.workshop.service.SystemConfigService;
+import com.workshop.service.UserExistenceService;
+import com.workshop.service.UserService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/admin")
+@RequiredArgsConstructor
+public class AdminController {
+    
+    private final BoundedPasswordEncoder passwordEncoder;
+    private final UserExistenceService userExistenceService;
+    private final RateLimiter rateLimiter;
+    private final SystemConfigService systemConfigService;
+    private final TokenRevocationService tokenRevocationService;
+    private final UserService userService;
+    private final LedgerAppender ledgerAppender;
+    private final RewardJournal rewardJournal;
+    private final BalanceReconciler balanceReconciler;
+    private final LedgerArchiver ledgerArchiver;
+    private final HotAccountService hotAccountService;
+    private final LevelRebuilder levelRebuilder;
+    private final CheckinBitmap checkinBitmap;
+    private final DailyTaskEngine dailyTaskEngine;
+    private final CheckinHistoryService checkinHistoryService;
+    private final MapViewCounter mapViewCounter;
+    private final MapSearchIndex mapSearchIndex;
+    private final HotMapRanking hotMapRanking;
+    
+    @GetMapping("/metrics/password-hashing")
+    public ApiResponse<Map<String, Object>> getPasswordHashingStats() {
+        return ApiResponse.success(passwordEncoder.getStats());
+    }
+    
+    @GetMapping("/metrics/existence-filters")
+    public ApiResponse<Map<String, Object>> getExistenceFilterStats() {
+        return ApiResponse.success(userExistenceService.getStats());
+    }
+    
+    @PostMapping("/existence-filters/rebuild")
+    public ApiResponse<Map<String, Object>> rebuildExistenceFilters() {
+        userExistenceService.rebuild();
+        return ApiResponse.success("过滤器已重建", userExistenceService.getStats());
+    }
+    
+    @GetMapping("/metrics/rate-limit")
+    public ApiResponse<Map<String, Object>> getRateLimitStats() {
+        return ApiResponse.success(rateLimiter.getStats());
+    }
+    
+    @GetMapping("/system-config/snapshot")
+    public ApiResponse<Map<String, Object>> getSystemConfigSnapshot() {
+        return ApiResponse.success(systemConfigService.getStats());
+    }
+    
+    @PostMapping("/system-config/refresh")
+    public ApiResponse<Map<String, Object>> refreshSystemConfig() {
+        systemConfigService.refresh();
+        return ApiResponse.success("配置已刷新", systemConfigService.getStats());
+    }
+    
+    @PostMapping("/users/{userId}/ban")
+    public ApiResponse<Void> banUser(@PathVariable Long userId, @Valid @RequestBody BanUserRequest request) {
+        userService.banUser(userId, request.getReason());
+        return ApiResponse.success("用户已封禁", null);
+    }
+    
+    @PostMapping("/users/{userId}/unban")
+    public ApiResponse<Void> unbanUser(@PathVariable Long userId) {
+        userService.unbanUser(userId);
+        return ApiResponse.success("用户已解封", null);
+    }
+    
+    @GetMapping("/metrics/token-revocation")
+    public ApiResponse<Map<String, Object>> getTokenRevocationStats() {
+        return ApiResponse.success(tokenRevocationService.getStats());
+    }
+    
+    @PostMapping("/token-revocation/rebuild")
+    public ApiResponse<Map<String, Object>> rebuildTokenRevocation() {
+        tokenRevocationService.rebuild();
+        return ApiResponse.success("吊销状态已重建", tokenRevocationService.getStats());
+    }
+    
+    @GetMapping("/metrics/ledger")
+    public ApiResponse<Map<String, Object>> getLedgerStats() {
+        return ApiResponse.success(ledgerAppender.getStats());
+    }
+    
+    @GetMapping("/metrics/reward-journal")
+    public ApiResponse<Map<String, Object>> getRewardJournalStats() {
+        return ApiResponse.success(rewardJournal.getStats());
+    }
+    
+    @GetMapping("/reconciliation/report")
+    public ApiResponse<Map<String, Object>> getReconciliationReport() {
+        return ApiResponse.success(balanceReconciler.getLastReport());
+    }
+    
+    @PostMapping("/reconciliation/run")
+    public ApiResponse<Map<String, Object>> runReconciliation() {
+        return ApiResponse.success("对账完成", balanceReconciler.run());
+    }
+    
+    @GetMapping("/metrics/ledger-archive")
+    public ApiResponse<Map<String, Object>> getLedgerArchiveStats() {
+        return ApiResponse.success(ledgerArchiver.getStats());
+    }
+    
+    @PostMapping("/ledger-archive/run")
+    public ApiResponse<Map<String, Object>> runLedgerArchive() {
+        int archived = ledgerArchiver.archiveClosedMonths();
+        return ApiResponse.success("已归档 " + archived + " 个月", ledgerArchiver.getStats());
+    }
+    
+    @PostMapping("/users/{userId}/hot-account")
+    public ApiResponse<Void> markHotAccount(@PathVariable Long userId) {
+        hotAccountService.setHot(userId, true);
+        return ApiResponse.success("已开启余额分片", null);
+    }
+    
+    @PostMapping("/users/{userId}/hot-account/disable")
+    public ApiResponse<Void> unmarkHotAccount(@PathVariable Long userId) {
+        hotAccountService.setHot(userId, false);
+        return ApiResponse.success("已关闭余额分片", null);
+    }
+    
+    @GetMapping("/metrics/hot-accounts")
+    public ApiResponse<Map<String, Object>> getHotAccountStats() {
+        return ApiResponse.success(hotAccountService.getStats());
+    }
+    
+    @PostMapping("/levels/rebuild")
+    public ApiResponse<Map<String, Object>> rebuildLevels() {
+        return ApiResponse.success("等级重算已开始", levelRebuilder.start());
+    }
+    
+    @PostMapping("/levels/rebuild/cancel")
+    public ApiResponse<Map<String, Object>> cancelLevelRebuild() {
+        levelRebuilder.cancel();
+        return ApiResponse.success("已请求取消", levelRebuilder.getProgress());
+    }
+    
+    @GetMapping("/levels/rebuild")
+    public ApiResponse<Map<String, Object>> getLevelRebuildProgress() {
+        return ApiResponse.success(levelRebuilder.getProgress());
+    }
+    
+    @GetMapping("/metrics/checkin-bitmap")
+    public ApiResponse<Map<String, Object>> getCheckinBitmapStats() {
+        return ApiResponse.success(checkinBitmap.getStats());
+    }
+    
+    @GetMapping("/metrics/daily-tasks")
+    public ApiResponse<Map<String, Object>> getDailyTaskStats() {
+        return ApiResponse.success(dailyTaskEngine.getStats());
+    }
+    
+    @PostMapping("/checkin-history/backfill")
+    public ApiResponse<Map<String, Object>> backfillCheckinHistory() {
+        return ApiResponse.success("签到历史回填已开始", checkinHistoryService.startBackfill());
+    }
+    
+    @GetMapping("/checkin-history/backfill")
+    public ApiResponse<Map<String, Object>> getCheckinHistoryBackfillProgress() {
+        return ApiResponse.success(checkinHistoryService.getBackfillProgress());
+    }
+    
+    @GetMapping("/metrics/map-views")
+    public ApiResponse<Map<String, Object>> getMapViewStats() {
+        return ApiResponse.success(mapViewCounter.getStats());
+    }
+    
+    @GetMapping("/metrics/map-search")
+    public ApiResponse<Map<String, Object>> getMapSearchStats() {
+        return ApiResponse.success(mapSearchIndex.getStats());
+    }
+    
+    @PostMapping("/map-search/rebuild")
+    public ApiResponse<Map<String, Object>> rebuildMapSearch() {
+        return ApiResponse.success("搜索索引重建已开始", mapSearchIndex.startRebuild());
+    }
+    
+    @GetMapping("/metrics/hot-maps")
+    public ApiResponse<Map<String, Object>> getHotMapStats() {
+        return ApiResponse.success(hotMapRanking.getStats());
+    }
+}
@@ -1,8 +1,10 @@
 package com.workshop.controller;
 
 import com.workshop.dto.ApiResponse;
+import com.workshop.dto.checkin.CheckinHistoryResponse;
 import com.workshop.dto.checkin.CheckinResponse;
 import com.workshop.dto.checkin.CheckinStatusResponse;
+import com.workshop.service.CheckinHistoryService;
 import com.workshop.service.CheckinService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -16,6 +18,7 @@ import org.springframework.web.bind.annotation.*;
 public class CheckinController {
     
     private final CheckinService checkinService;
+    private final CheckinHistoryService checkinHistoryService;
     
     @PostMapping
     public ApiResponse<CheckinResponse> checkin(@AuthenticationPrincipal Long userId) {
@@ -29,4 +32,11 @@ public class CheckinController {
         CheckinStatusResponse response = checkinService.getCheckinStatus(userId);
         return ApiResponse.success(response);
     }
+    
+    @GetMapping("/history")
+    public ApiResponse<CheckinHistoryResponse> getCheckinHistory(
+            @AuthenticationPrincipal Long userId,
+            @RequestParam(required = false) String month) {
+        return ApiResponse.success(checkinHistoryService.getHistory(userId, month));
+    }
 }
@@ -0,0 +1,51 @@
+package com.workshop.controller;
+
+import com.workshop.dto.ApiResponse;
+import com.workshop.dto.map.HotMapsResponse;
+import com.workshop.dto.map.MapListResponse;
+import com.workshop.dto.map.MapSearchResponse;
+import com.workshop.dto.map.MapViewStatsResponse;
+import com.workshop.service.MapService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/maps")
+@RequiredArgsConstructor
+public class MapController {
+    
+    private final MapService mapService;
+    
+    @GetMapping
+    public ApiResponse<MapListResponse> listMaps(
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) Long authorId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        return ApiResponse.success(mapService.listMaps(sort, authorId, cursor, size));
+    }
+    
+    @GetMapping("/search")
+    public ApiResponse<MapSearchResponse> search(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "20") int size) {
+        return ApiResponse.success(mapService.search(q, size));
+    }
+    
+    @GetMapping("/hot")
+    public ApiResponse<HotMapsResponse> getHotMaps(@RequestParam(defaultValue = "20") int size) {
+        return ApiResponse.success(mapService.getHotMaps(size));
+    }
+    
+    @PostMapping("/{id}/view")
+    public ApiResponse<Void> recordView(@PathVariable Long id, @AuthenticationPrincipal Long userId) {
+        mapService.recordView(id, userId);
+        return ApiResponse.success("浏览已记录", null);
+    }
+    
+    @GetMapping("/{id}/stats")
+    public ApiResponse<MapViewStatsResponse> getViewStats(@PathVariable Long id) {
+        return ApiResponse.success(mapService.getViewStats(id));
+    }
+}
@@ -1,11 +1,15 @@
 package com.workshop.controller;
 
 import com.workshop.dto.ApiResponse;
+import com.workshop.dto.task.DailyTaskProgressResponse;
+import com.workshop.dto.transaction.TransactionHistoryResponse;
 import com.workshop.dto.user.*;
 import com.workshop.entity.User;
 import com.workshop.exception.BusinessException;
 import com.workshop.repository.UserRepository;
+import com.workshop.service.DailyTaskEngine;
 import com.workshop.service.MinioService;
+import com.workshop.service.TransactionService;
 import com.workshop.service.UserService;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
@@ -28,6 +32,8 @@ public class UserController {
     private final UserService userService;
     private final MinioService minioService;
     private final UserRepository userRepository;
+    private final TransactionService transactionService;
+    private final DailyTaskEngine dailyTaskEngine;
     
     @GetMapping("/profile")
     public ApiResponse<UserProfileResponse> getProfile(@AuthenticationPrincipal Long userId) {
@@ -79,6 +85,20 @@ public class UserController {
         return ApiResponse.success("邮箱修改成功", null);
     }
     
+    @GetMapping("/transactions")
+    public ApiResponse<TransactionHistoryResponse> getTransactions(
+            @AuthenticationPrincipal Long userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String type,
+            @RequestParam(defaultValue = "20") int size) {
+        return ApiResponse.success(transactionService.getHistory(userId, cursor, type, size));
+    }
+    
+    @GetMapping("/tasks")
+    public ApiResponse<DailyTaskProgressResponse> getDailyTasks(@AuthenticationPrincipal Long userId) {
+        return ApiResponse.success(dailyTaskEngine.getProgress(userId));
+    }
+    
     @GetMapping("/avatar/{userId}")
     public void getAvatar(@PathVariable Long userId, HttpServletResponse response) throws Exception {
         log.info("Fetching avatar for userId: {}", userId);
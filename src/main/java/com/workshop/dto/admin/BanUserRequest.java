@@ -0,0 +1,11 @@
+package com.workshop.dto.admin;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.Data;
+
+@Data
+public class BanUserRequest {
+    
+    @NotBlank(message = "封禁原因不能为空")
+    private String reason;
+}
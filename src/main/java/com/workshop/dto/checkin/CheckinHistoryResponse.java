@@ -0,0 +1,19 @@
+package com.workshop.dto.checkin;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CheckinHistoryResponse {
+    private LocalDate lastCheckinDate;
+    private Integer currentStreak;
+    private String month;
+    private List<Integer> checkedInDays;
+    private Integer yearTotal;
+}
@@ -0,0 +1,14 @@
+package com.workshop.dto.map;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HotMapEntry {
+    private Integer rank;
+    private Double score;
+    private MapSummaryResponse map;
+}
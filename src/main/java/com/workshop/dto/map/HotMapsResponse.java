@@ -0,0 +1,16 @@
+package com.workshop.dto.map;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HotMapsResponse {
+    private List<HotMapEntry> items;
+    private LocalDateTime generatedAt;
+}
@@ -0,0 +1,16 @@
+package com.workshop.dto.map;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MapListResponse {
+    private List<MapSummaryResponse> items;
+    private String nextCursor;
+    private Boolean hasMore;
+}
@@ -0,0 +1,16 @@
+package com.workshop.dto.map;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MapSearchResponse {
+    private List<MapSummaryResponse> items;
+    private Integer total;
+    private Long tookMicros;
+}
@@ -0,0 +1,23 @@
+package com.workshop.dto.map;
+
+import com.workshop.entity.Map;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// 列表用的地图摘要，不含 description、authProof 等大字段
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MapSummaryResponse {
+    private Long id;
+    private String title;
+    private String coverImage;
+    private Long authorId;
+    private Map.MapType type;
+    private Integer downloadCost;
+    private Integer views;
+    private LocalDateTime createdAt;
+}
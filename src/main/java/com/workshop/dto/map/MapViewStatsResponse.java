@@ -0,0 +1,14 @@
+package com.workshop.dto.map;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MapViewStatsResponse {
+    private Long mapId;
+    private Long views;
+    private Long uniqueViewersToday;
+}
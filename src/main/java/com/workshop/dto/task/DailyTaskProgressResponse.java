@@ -0,0 +1,21 @@
+package com.workshop.dto.task;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyTaskProgressResponse {
+    private LocalDate date;
+    private Boolean loginRewarded;
+    private Integer viewCount;
+    private Integer viewLimit;
+    private Integer likeCount;
+    private Integer likeLimit;
+    private Integer donateDrops;
+    private Integer donateLimit;
+}
@@ -0,0 +1,16 @@
+package com.workshop.dto.transaction;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransactionHistoryResponse {
+    private List<TransactionResponse> items;
+    private String nextCursor;
+    private Boolean hasMore;
+}
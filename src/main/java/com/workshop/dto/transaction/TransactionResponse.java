@@ -0,0 +1,20 @@
+package com.workshop.dto.transaction;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransactionResponse {
+    private Long id;
+    private String type;
+    private Integer changeDrops;
+    private Integer changeLightning;
+    private Long relatedId;
+    private String description;
+    private LocalDateTime createdAt;
+}
@@ -40,4 +40,8 @@ public class DailyTaskLog {
     
     @Column(name = "login_rewarded", nullable = false)
     private Boolean loginRewarded = false;
+    
+    // 奖励日志写库时登记的签到奖励，非空表示已发放
+    @Column(name = "checkin_reward_drops")
+    private Integer checkinRewardDrops;
 }
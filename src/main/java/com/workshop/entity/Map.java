@@ -1,5 +1,6 @@
 package com.workshop.entity;
 
+import com.workshop.service.MapSearchListener;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -10,7 +11,13 @@ import org.hibernate.annotations.UpdateTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "maps")
+@Table(name = "maps", indexes = {
+    @Index(name = "idx_maps_status_created", columnList = "status, created_at, id"),
+    @Index(name = "idx_maps_status_views", columnList = "status, views, id"),
+    @Index(name = "idx_maps_author_status_created", columnList = "author_id, status, created_at, id"),
+    @Index(name = "idx_maps_author_status_views", columnList = "author_id, status, views, id")
+})
+@EntityListeners(MapSearchListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -9,14 +9,19 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "transactions")
+@Table(name = "transactions", indexes = {
+    @Index(name = "idx_transactions_user_created", columnList = "user_id, created_at, id"),
+    @Index(name = "idx_transactions_user_type_created", columnList = "user_id, type, created_at, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Transaction {
     
+    // 序列按块取号，流水可批量插入 (IDENTITY 会禁用 JDBC 批处理)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transactions_ledger_seq")
+    @SequenceGenerator(name = "transactions_ledger_seq", sequenceName = "transactions_ledger_seq", allocationSize = 50)
     private Long id;
     
     @Column(name = "user_id", nullable = false)
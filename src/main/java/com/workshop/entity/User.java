@@ -5,12 +5,19 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.SourceType;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.time.LocalDateTime;
 
+// 只写回实际修改的列；余额、等级、最近登录等由原子 UPDATE 维护的列对实体只读，
+// 加载后保存实体不会用旧值覆盖并发的入账
 @Entity
-@Table(name = "users")
+@DynamicUpdate
+@Table(name = "users", indexes = {
+    @Index(name = "idx_users_updated_at", columnList = "updated_at")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -41,15 +48,19 @@ public class User {
     @Column(nullable = false, length = 20)
     private UserRole role = UserRole.USER;
     
-    @Column(nullable = false)
+    @Column(nullable = false, updatable = false)
     private Integer level = 0;
     
-    @Column(nullable = false)
+    @Column(nullable = false, updatable = false)
     private Integer lightning = 0;
     
-    @Column(nullable = false)
+    @Column(nullable = false, updatable = false)
     private Integer drops = 0;
     
+    // 热点账户的入账写入 balance_shards，drops 加上各槽位之和才是实际余额
+    @Column(name = "hot_account", nullable = false, updatable = false, columnDefinition = "boolean default false")
+    private Boolean hotAccount = false;
+    
     @Column(name = "invite_code", nullable = false, unique = true, length = 8)
     private String inviteCode;
     
@@ -63,17 +74,22 @@ public class User {
     @Column(name = "ban_reason", columnDefinition = "TEXT")
     private String banReason;
     
+    // 在此时间之前签发的 token 全部失效
+    @Column(name = "tokens_invalid_before")
+    private LocalDateTime tokensInvalidBefore;
+    
     @Column(name = "registration_ip", length = 45)
     private String registrationIp;
     
-    @Column(name = "last_login_at")
+    @Column(name = "last_login_at", updatable = false)
     private LocalDateTime lastLoginAt;
     
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
     
-    @UpdateTimestamp
+    // 取数据库时钟：其它节点按 updated_at 增量同步 (封禁、存在性过滤器)，不能依赖各节点 JVM 时钟一致
+    @UpdateTimestamp(source = SourceType.DB)
     @Column(name = "updated_at", nullable = false)
     private LocalDateTime updatedAt;
     
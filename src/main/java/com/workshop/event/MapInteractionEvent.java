@@ -0,0 +1,20 @@
+package com.workshop.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// 地图互动，用于热度排行；amount 仅打赏时为水滴数
+@Getter
+@AllArgsConstructor
+public class MapInteractionEvent {
+    private final Long mapId;
+    private final Kind kind;
+    private final int amount;
+    
+    public enum Kind {
+        VIEW,
+        LIKE,
+        DOWNLOAD,
+        DONATE
+    }
+}
@@ -0,0 +1,21 @@
+package com.workshop.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// 计入每日任务的用户行为；targetId 为地图 id，amount 仅打赏时为水滴数
+@Getter
+@AllArgsConstructor
+public class TaskActionEvent {
+    private final Long userId;
+    private final Action action;
+    private final Long targetId;
+    private final int amount;
+    
+    public enum Action {
+        LOGIN,
+        VIEW,
+        LIKE,
+        DONATE
+    }
+}
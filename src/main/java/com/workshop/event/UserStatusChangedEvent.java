@@ -0,0 +1,15 @@
+package com.workshop.event;
+
+import com.workshop.entity.User;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+@Getter
+@AllArgsConstructor
+public class UserStatusChangedEvent {
+    private final Long userId;
+    private final User.UserStatus status;
+    private final LocalDateTime tokensInvalidBefore;
+}
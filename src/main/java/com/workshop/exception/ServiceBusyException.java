@@ -0,0 +1,18 @@
+package com.workshop.exception;
+
+import lombok.Getter;
+
+// 过载或排队超时，按 503 返回并带 Retry-After，客户端稍后重试即可
+@Getter
+public class ServiceBusyException extends BusinessException {
+    private final int retryAfterSeconds;
+    
+    public ServiceBusyException() {
+        this(1);
+    }
+    
+    public ServiceBusyException(int retryAfterSeconds) {
+        super(503, "系统繁忙，请稍后再试");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -1,17 +1,78 @@
 package com.workshop.repository;
 
+import com.workshop.dto.map.MapSummaryResponse;
 import com.workshop.entity.Map;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+// 地图列表按 (排序键, id) 倒序键集分页，只查摘要列，返回 Slice 不做 count；
+// 每种 过滤条件 + 排序 组合都有对应的 (status, 排序键, id) 或 (author_id, status, 排序键, id) 索引
 @Repository
 public interface MapRepository extends JpaRepository<Map, Long> {
     
-    Page<Map> findByStatus(Map.MapStatus status, Pageable pageable);
+    String SUMMARY = "SELECT new com.workshop.dto.map.MapSummaryResponse(m.id, m.title, m.coverImage, m.authorId, " +
+                     "m.type, m.downloadCost, m.views, m.createdAt) FROM Map m ";
+    
+    @Query(SUMMARY + "WHERE m.status = :status ORDER BY m.createdAt DESC, m.id DESC")
+    Slice<MapSummaryResponse> findNewest(@Param("status") Map.MapStatus status, Pageable pageable);
+    
+    @Query(SUMMARY + "WHERE m.status = :status AND m.createdAt <= :createdAt " +
+           "AND (m.createdAt < :createdAt OR m.id < :id) ORDER BY m.createdAt DESC, m.id DESC")
+    Slice<MapSummaryResponse> findNewestBefore(@Param("status") Map.MapStatus status,
+                                               @Param("createdAt") LocalDateTime createdAt,
+                                               @Param("id") Long id,
+                                               Pageable pageable);
+    
+    @Query(SUMMARY + "WHERE m.status = :status ORDER BY m.views DESC, m.id DESC")
+    Slice<MapSummaryResponse> findMostViewed(@Param("status") Map.MapStatus status, Pageable pageable);
+    
+    @Query(SUMMARY + "WHERE m.status = :status AND m.views <= :views " +
+           "AND (m.views < :views OR m.id < :id) ORDER BY m.views DESC, m.id DESC")
+    Slice<MapSummaryResponse> findMostViewedBefore(@Param("status") Map.MapStatus status,
+                                                   @Param("views") Integer views,
+                                                   @Param("id") Long id,
+                                                   Pageable pageable);
+    
+    @Query(SUMMARY + "WHERE m.authorId = :authorId AND m.status = :status ORDER BY m.createdAt DESC, m.id DESC")
+    Slice<MapSummaryResponse> findNewestByAuthor(@Param("authorId") Long authorId,
+                                                 @Param("status") Map.MapStatus status,
+                                                 Pageable pageable);
+    
+    @Query(SUMMARY + "WHERE m.authorId = :authorId AND m.status = :status AND m.createdAt <= :createdAt " +
+           "AND (m.createdAt < :createdAt OR m.id < :id) ORDER BY m.createdAt DESC, m.id DESC")
+    Slice<MapSummaryResponse> findNewestByAuthorBefore(@Param("authorId") Long authorId,
+                                                       @Param("status") Map.MapStatus status,
+                                                       @Param("createdAt") LocalDateTime createdAt,
+                                                       @Param("id") Long id,
+                                                       Pageable pageable);
+    
+    @Query(SUMMARY + "WHERE m.authorId = :authorId AND m.status = :status ORDER BY m.views DESC, m.id DESC")
+    Slice<MapSummaryResponse> findMostViewedByAuthor(@Param("authorId") Long authorId,
+                                                     @Param("status") Map.MapStatus status,
+                                                     Pageable pageable);
+    
+    @Query(SUMMARY + "WHERE m.authorId = :authorId AND m.status = :status AND m.views <= :views " +
+           "AND (m.views < :views OR m.id < :id) ORDER BY m.views DESC, m.id DESC")
+    Slice<MapSummaryResponse> findMostViewedByAuthorBefore(@Param("authorId") Long authorId,
+                                                           @Param("status") Map.MapStatus status,
+                                                           @Param("views") Integer views,
+                                                           @Param("id") Long id,
+                                                           Pageable pageable);
+    
+    boolean existsByIdAndStatus(Long id, Map.MapStatus status);
     
-    Page<Map> findByAuthorId(Long authorId, Pageable pageable);
+    @Query("SELECT m.views FROM Map m WHERE m.id = :id AND m.status = :status")
+    Optional<Integer> findViews(@Param("id") Long id, @Param("status") Map.MapStatus status);
     
-    Page<Map> findByAuthorIdAndStatus(Long authorId, Map.MapStatus status, Pageable pageable);
+    @Query(SUMMARY + "WHERE m.id IN :ids AND m.status = :status")
+    List<MapSummaryResponse> findSummaries(@Param("ids") Collection<Long> ids, @Param("status") Map.MapStatus status);
 }
@@ -1,13 +1,42 @@
 package com.workshop.repository;
 
 import com.workshop.entity.Transaction;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+
+// 流水历史按 (created_at, id) 倒序键集分页，返回 Slice 不做 count；
+// 不限类型走 idx_transactions_user_created，按类型筛选走 idx_transactions_user_type_created
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
     
-    Page<Transaction> findByUserId(Long userId, Pageable pageable);
+    @Query("SELECT t FROM Transaction t WHERE t.userId = :userId ORDER BY t.createdAt DESC, t.id DESC")
+    Slice<Transaction> findLatest(@Param("userId") Long userId, Pageable pageable);
+    
+    // createdAt <= :createdAt 作为索引范围条件，其余部分只过滤同一时间戳的记录
+    @Query("SELECT t FROM Transaction t WHERE t.userId = :userId AND t.createdAt <= :createdAt " +
+           "AND (t.createdAt < :createdAt OR t.id < :id) ORDER BY t.createdAt DESC, t.id DESC")
+    Slice<Transaction> findBefore(@Param("userId") Long userId,
+                                  @Param("createdAt") LocalDateTime createdAt,
+                                  @Param("id") Long id,
+                                  Pageable pageable);
+    
+    @Query("SELECT t FROM Transaction t WHERE t.userId = :userId AND t.type = :type " +
+           "ORDER BY t.createdAt DESC, t.id DESC")
+    Slice<Transaction> findLatestByType(@Param("userId") Long userId,
+                                        @Param("type") Transaction.TransactionType type,
+                                        Pageable pageable);
+    
+    @Query("SELECT t FROM Transaction t WHERE t.userId = :userId AND t.type = :type AND t.createdAt <= :createdAt " +
+           "AND (t.createdAt < :createdAt OR t.id < :id) ORDER BY t.createdAt DESC, t.id DESC")
+    Slice<Transaction> findBeforeByType(@Param("userId") Long userId,
+                                        @Param("type") Transaction.TransactionType type,
+                                        @Param("createdAt") LocalDateTime createdAt,
+                                        @Param("id") Long id,
+                                        Pageable pageable);
 }
@@ -2,11 +2,12 @@ package com.workshop.repository;
 
 import com.workshop.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -16,6 +17,8 @@ public interface UserRepository extends JpaRepository<User, Long> {
     
     Optional<User> findByEmail(String email);
     
+    List<User> findByUsernameOrEmail(String username, String email);
+    
     Optional<User> findByInviteCode(String inviteCode);
     
     boolean existsByUsername(String username);
@@ -24,7 +27,7 @@ public interface UserRepository extends JpaRepository<User, Long> {
     
     boolean existsByInviteCode(String inviteCode);
     
-    @Query("SELECT COUNT(u) FROM User u WHERE u.registrationIp = :ip " +
-           "AND DATE(u.createdAt) = :date")
-    long countByRegistrationIpAndDate(@Param("ip") String ip, @Param("date") LocalDate date);
+    @Modifying
+    @Query("UPDATE User u SET u.passwordHash = :passwordHash WHERE u.id = :id")
+    int updatePasswordHash(@Param("id") Long id, @Param("passwordHash") String passwordHash);
 }
@@ -0,0 +1,140 @@
+package com.workshop.security;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+// 客户端 IP 解析：默认使用 TCP 对端地址，只有对端属于受信代理时才读取 X-Forwarded-For / X-Real-IP，
+// 否则客户端可通过伪造请求头绕过所有按 IP 的限流
+@Slf4j
+@Component
+public class ClientIpResolver {
+    
+    // 逗号分隔的 IP 或 CIDR，如 "127.0.0.1,10.0.0.0/8"
+    @Value("${rate-limit.trusted-proxies:}")
+    private String trustedProxies;
+    
+    private final List<Cidr> trusted = new ArrayList<>();
+    
+    @PostConstruct
+    public void init() {
+        for (String entry : trustedProxies.split(",")) {
+            String value = entry.trim();
+            if (value.isEmpty()) {
+                continue;
+            }
+            Cidr cidr = Cidr.parse(value);
+            if (cidr == null) {
+                throw new IllegalStateException("Invalid trusted proxy: " + value);
+            }
+            trusted.add(cidr);
+        }
+        log.info("Client IP resolver trusts {} proxy ranges", trusted.size());
+    }
+    
+    public String getClientIp(HttpServletRequest request) {
+        String remote = request.getRemoteAddr();
+        if (!isTrusted(remote)) {
+            return remote;
+        }
+        // 从右往左跳过受信代理，第一个非受信地址即为客户端；左侧内容可被客户端任意填写，不予采信
+        String forwarded = request.getHeader("X-Forwarded-For");
+        if (forwarded != null && !forwarded.isBlank()) {
+            String[] hops = forwarded.split(",");
+            for (int i = hops.length - 1; i >= 0; i--) {
+                String hop = hops[i].trim();
+                if (parseLiteral(hop) == null) {
+                    return remote;
+                }
+                if (!isTrusted(hop)) {
+                    return hop;
+                }
+            }
+            return hops[0].trim();
+        }
+        String realIp = request.getHeader("X-Real-IP");
+        if (realIp != null && parseLiteral(realIp.trim()) != null) {
+            return realIp.trim();
+        }
+        return remote;
+    }
+    
+    private boolean isTrusted(String ip) {
+        if (trusted.isEmpty()) {
+            return false;
+        }
+        byte[] address = parseLiteral(ip);
+        if (address == null) {
+            return false;
+        }
+        for (Cidr cidr : trusted) {
+            if (cidr.contains(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // 只接受 IP 字面量，避免 InetAddress 对主机名发起 DNS 查询
+    private static byte[] parseLiteral(String ip) {
+        if (ip == null || ip.isEmpty() || ip.length() > 45) {
+            return null;
+        }
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            boolean hex = (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+            if (!hex && c != '.' && c != ':') {
+                return null;
+            }
+        }
+        try {
+            return InetAddress.getByName(ip).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+    
+    private record Cidr(byte[] network, int prefix) {
+        
+        static Cidr parse(String value) {
+            int slash = value.indexOf('/');
+            byte[] network = parseLiteral(slash < 0 ? value : value.substring(0, slash));
+            if (network == null) {
+                return null;
+            }
+            int prefix = network.length * 8;
+            if (slash >= 0) {
+                try {
+                    prefix = Integer.parseInt(value.substring(slash + 1));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                if (prefix < 0 || prefix > network.length * 8) {
+                    return null;
+                }
+            }
+            return new Cidr(network, prefix);
+        }
+        
+        boolean contains(byte[] address) {
+            if (address.length != network.length) {
+                return false;
+            }
+            int bits = prefix;
+            for (int i = 0; i < address.length && bits > 0; i++, bits -= 8) {
+                int mask = bits >= 8 ? 0xFF : (0xFF << (8 - bits)) & 0xFF;
+                if ((address[i] & mask) != (network[i] & mask)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
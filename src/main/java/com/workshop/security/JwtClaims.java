@@ -0,0 +1,16 @@
+package com.workshop.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Date;
+
+@Getter
+@AllArgsConstructor
+public class JwtClaims {
+    private final Long userId;
+    private final String username;
+    private final String role;
+    private final Date issuedAt;
+    private final Date expiration;
+}
@@ -2,12 +2,18 @@ package com.workshop.security;
 
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class JwtTokenProvider {
@@ -18,8 +24,22 @@ public class JwtTokenProvider {
     @Value("${jwt.expiration}")
     private long jwtExpiration;
     
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+    @Value("${jwt.cache-size:10000}")
+    private int cacheSize;
+    
+    private SecretKey signingKey;
+    
+    private JwtParser jwtParser;
+    
+    // 已验签的 token 缓存，key 为 token 的 SHA-256 摘要，过期后移除
+    private final ConcurrentHashMap<String, JwtClaims> verifiedTokens = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        jwtParser = Jwts.parser()
+                .verifyWith(signingKey)
+                .build();
     }
     
     public String generateToken(Long userId, String username, String role) {
@@ -32,49 +52,74 @@ public class JwtTokenProvider {
                 .claim("role", role)
                 .issuedAt(now)
                 .expiration(expiryDate)
-                .signWith(getSigningKey())
+                .signWith(signingKey)
                 .compact();
     }
     
-    public Long getUserIdFromToken(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+    // 校验并解析 token，一次验签得到全部声明；token 无效时返回 null
+    public JwtClaims parseToken(String token) {
+        String digest = digest(token);
+        JwtClaims cached = verifiedTokens.get(digest);
+        if (cached != null) {
+            if (cached.getExpiration().getTime() > System.currentTimeMillis()) {
+                return cached;
+            }
+            verifiedTokens.remove(digest, cached);
+            return null;
+        }
         
-        return Long.parseLong(claims.getSubject());
+        JwtClaims claims;
+        try {
+            Claims payload = jwtParser.parseSignedClaims(token).getPayload();
+            claims = new JwtClaims(
+                    Long.parseLong(payload.getSubject()),
+                    payload.get("username", String.class),
+                    payload.get("role", String.class),
+                    payload.getIssuedAt(),
+                    payload.getExpiration()
+            );
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+        
+        if (claims.getExpiration() != null && verifiedTokens.size() < cacheSize) {
+            verifiedTokens.put(digest, claims);
+        }
+        return claims;
+    }
+    
+    public Long getUserIdFromToken(String token) {
+        JwtClaims claims = parseToken(token);
+        return claims != null ? claims.getUserId() : null;
     }
     
     public String getUsernameFromToken(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-        
-        return claims.get("username", String.class);
+        JwtClaims claims = parseToken(token);
+        return claims != null ? claims.getUsername() : null;
     }
     
     public String getRoleFromToken(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-        
-        return claims.get("role", String.class);
+        JwtClaims claims = parseToken(token);
+        return claims != null ? claims.getRole() : null;
     }
     
     public boolean validateToken(String token) {
+        return parseToken(token) != null;
+    }
+    
+    @Scheduled(fixedDelayString = "${jwt.cache-evict-interval:60000}")
+    public void evictExpiredTokens() {
+        long now = System.currentTimeMillis();
+        verifiedTokens.values().removeIf(claims -> claims.getExpiration().getTime() <= now);
+    }
+    
+    private String digest(String token) {
         try {
-            Jwts.parser()
-                    .verifyWith(getSigningKey())
-                    .build()
-                    .parseSignedClaims(token);
-            return true;
-        } catch (JwtException | IllegalArgumentException e) {
-            return false;
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] hash = md.digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
         }
     }
 }
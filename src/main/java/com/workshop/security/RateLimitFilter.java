@@ -0,0 +1,103 @@
+package com.workshop.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.workshop.dto.ApiResponse;
+import com.workshop.service.SystemConfigService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+@Component
+@RequiredArgsConstructor
+public class RateLimitFilter extends OncePerRequestFilter {
+    
+    private final RateLimiter rateLimiter;
+    private final SystemConfigService systemConfigService;
+    private final ObjectMapper objectMapper;
+    private final ClientIpResolver clientIpResolver;
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        Long userId = getAuthenticatedUserId();
+        RoutePolicy policy = RoutePolicy.match(request.getMethod(), path, userId != null);
+        
+        String subject = policy.getKeyType() == KeyType.USER ? String.valueOf(userId) : clientIpResolver.getClientIp(request);
+        String key = policy.name() + ":" + subject;
+        
+        int limit = systemConfigService.getRateLimitPerMinute(policy.getConfigKey(), policy.getDefaultLimit());
+        if (!rateLimiter.tryAcquire(key, limit)) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            objectMapper.writeValue(response.getWriter(), ApiResponse.error(429, "请求过于频繁，请稍后再试"));
+            return;
+        }
+        
+        filterChain.doFilter(request, response);
+    }
+    
+    private Long getAuthenticatedUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof Long userId) {
+            return userId;
+        }
+        return null;
+    }
+    
+    enum KeyType {
+        IP, USER
+    }
+    
+    @Getter
+    enum RoutePolicy {
+        LOGIN("POST", "/auth/login", KeyType.IP, "rate_limit_login_per_minute", 10),
+        REGISTER("POST", "/auth/register", KeyType.IP, "rate_limit_register_per_minute", 5),
+        USER(null, "/", KeyType.USER, "rate_limit_user_per_minute", 120),
+        ANONYMOUS(null, "/", KeyType.IP, "rate_limit_ip_per_minute", 300);
+        
+        private final String method;
+        private final String pathPrefix;
+        private final KeyType keyType;
+        private final String configKey;
+        private final int defaultLimit;
+        
+        RoutePolicy(String method, String pathPrefix, KeyType keyType, String configKey, int defaultLimit) {
+            this.method = method;
+            this.pathPrefix = pathPrefix;
+            this.keyType = keyType;
+            this.configKey = configKey;
+            this.defaultLimit = defaultLimit;
+        }
+        
+        static RoutePolicy match(String method, String path, boolean authenticated) {
+            for (RoutePolicy policy : values()) {
+                if (policy.method != null && !policy.method.equalsIgnoreCase(method)) {
+                    continue;
+                }
+                if (!path.startsWith(policy.pathPrefix)) {
+                    continue;
+                }
+                if (policy.keyType == KeyType.USER && !authenticated) {
+                    continue;
+                }
+                return policy;
+            }
+            return ANONYMOUS;
+        }
+    }
+}
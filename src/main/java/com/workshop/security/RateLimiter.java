@@ -0,0 +1,187 @@
+package com.workshop.security;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// 进程内限流器：按分钟的令牌桶 (GCRA，单个 AtomicLong 的 CAS 实现) 与按天的配额计数
+@Slf4j
+@Component
+public class RateLimiter {
+    
+    private static final long MINUTE_NANOS = 60_000_000_000L;
+    
+    @Value("${rate-limit.snapshot-path:./data/rate-limit-snapshot.properties}")
+    private String snapshotPath;
+    
+    // key 形如 "LOGIN:1.2.3.4"，值为理论到达时间 (TAT)
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    
+    private final ConcurrentHashMap<String, AtomicInteger> dailyCounters = new ConcurrentHashMap<>();
+    private volatile LocalDate counterDate = LocalDate.now();
+    
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    
+    @PostConstruct
+    public void init() {
+        loadSnapshot();
+    }
+    
+    // 每分钟 permitsPerMinute 个令牌，桶容量同样为 permitsPerMinute
+    public boolean tryAcquire(String key, int permitsPerMinute) {
+        if (permitsPerMinute <= 0) {
+            allowed.increment();
+            return true;
+        }
+        long interval = MINUTE_NANOS / permitsPerMinute;
+        long burst = MINUTE_NANOS - interval;
+        long now = System.nanoTime();
+        AtomicLong tat = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        while (true) {
+            long current = tat.get();
+            long base = Math.max(current, now);
+            if (base - now > burst) {
+                rejected.increment();
+                return false;
+            }
+            if (tat.compareAndSet(current, base + interval)) {
+                allowed.increment();
+                return true;
+            }
+        }
+    }
+    
+    public int getDailyCount(String key) {
+        rollDay();
+        AtomicInteger counter = dailyCounters.get(key);
+        return counter != null ? counter.get() : 0;
+    }
+    
+    public int incrementDaily(String key) {
+        rollDay();
+        return dailyCounters.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+    }
+    
+    // 先加后比较，超限则回退；并发请求中只有前 limit 个能拿到名额
+    public boolean tryReserveDaily(String key, int limit) {
+        rollDay();
+        AtomicInteger counter = dailyCounters.computeIfAbsent(key, k -> new AtomicInteger());
+        if (counter.incrementAndGet() > limit) {
+            counter.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+    
+    public void releaseDaily(String key) {
+        AtomicInteger counter = dailyCounters.get(key);
+        if (counter != null) {
+            counter.updateAndGet(v -> Math.max(0, v - 1));
+        }
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("buckets", buckets.size());
+        stats.put("dailyCounters", dailyCounters.size());
+        stats.put("counterDate", counterDate);
+        stats.put("allowed", allowed.sum());
+        stats.put("rejected", rejected.sum());
+        return stats;
+    }
+    
+    // 已完全回满的令牌桶与新建桶等价，可直接移除
+    @Scheduled(fixedDelayString = "${rate-limit.cleanup-interval:60000}")
+    public void cleanup() {
+        long now = System.nanoTime();
+        buckets.entrySet().removeIf(e -> e.getValue().get() <= now);
+        rollDay();
+    }
+    
+    @Scheduled(fixedDelayString = "${rate-limit.snapshot-interval:30000}")
+    public void snapshot() {
+        rollDay();
+        Properties props = new Properties();
+        props.setProperty("date", counterDate.toString());
+        dailyCounters.forEach((key, counter) -> props.setProperty("daily." + key, String.valueOf(counter.get())));
+        
+        Path path = Paths.get(snapshotPath);
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                props.store(out, "rate limiter daily counters");
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to write rate limiter snapshot to {}", path, e);
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        snapshot();
+    }
+    
+    private void loadSnapshot() {
+        Path path = Paths.get(snapshotPath);
+        if (!Files.exists(path)) {
+            return;
+        }
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            props.load(in);
+        } catch (IOException e) {
+            log.warn("Failed to read rate limiter snapshot from {}", path, e);
+            return;
+        }
+        if (!LocalDate.now().toString().equals(props.getProperty("date"))) {
+            return;
+        }
+        for (String name : props.stringPropertyNames()) {
+            if (name.startsWith("daily.")) {
+                try {
+                    int count = Integer.parseInt(props.getProperty(name));
+                    dailyCounters.put(name.substring("daily.".length()), new AtomicInteger(count));
+                } catch (NumberFormatException ignored) {
+                    // 忽略损坏的条目
+                }
+            }
+        }
+        log.info("Restored {} daily rate limit counters from snapshot", dailyCounters.size());
+    }
+    
+    private void rollDay() {
+        LocalDate today = LocalDate.now();
+        if (!today.equals(counterDate)) {
+            synchronized (this) {
+                if (!today.equals(counterDate)) {
+                    dailyCounters.clear();
+                    counterDate = today;
+                }
+            }
+        }
+    }
+}
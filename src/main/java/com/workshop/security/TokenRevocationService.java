@@ -0,0 +1,187 @@
+package com.workshop.security;
+
+import com.workshop.entity.User;
+import com.workshop.event.UserStatusChangedEvent;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// 封禁用户位图 + 每个用户的 token 失效时间，过滤器以 O(1) 判断 token 是否已被吊销
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+public class TokenRevocationService {
+    
+    private static final String LOAD_SQL =
+            "SELECT id, status, tokens_invalid_before FROM users " +
+            "WHERE status = 'BANNED' OR tokens_invalid_before IS NOT NULL";
+    
+    private static final String CHANGED_SQL =
+            "SELECT id, status, tokens_invalid_before FROM users WHERE updated_at > ?";
+    
+    // 水位与 updated_at 都取数据库时钟，不受节点间时钟偏差影响
+    private static final String DB_NOW_SQL = "SELECT LOCALTIMESTAMP";
+    
+    // 轮询时回看一段时间，覆盖 updated_at 早于提交的事务；更长的事务由定期全量重建兜底
+    private static final long POLL_OVERLAP_SECONDS = 5;
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    private volatile AtomicLongArray bannedBits = new AtomicLongArray(1024);
+    
+    // userId -> 失效时间 (epoch 秒)，iat 不晚于该时间的 token 视为已吊销
+    private final ConcurrentHashMap<Long, Long> invalidBefore = new ConcurrentHashMap<>();
+    
+    private volatile LocalDateTime lastPolledAt;
+    private final LongAdder revokedRequests = new LongAdder();
+    
+    @PostConstruct
+    public void init() {
+        rebuild();
+    }
+    
+    public boolean isRevoked(JwtClaims claims) {
+        long userId = claims.getUserId();
+        if (isBanned(userId)) {
+            revokedRequests.increment();
+            return true;
+        }
+        Long epoch = invalidBefore.get(userId);
+        if (epoch != null && claims.getIssuedAt() != null
+                && claims.getIssuedAt().getTime() / 1000 <= epoch) {
+            revokedRequests.increment();
+            return true;
+        }
+        return false;
+    }
+    
+    public boolean isBanned(long userId) {
+        AtomicLongArray bits = bannedBits;
+        int word = (int) (userId >>> 6);
+        return userId >= 0 && word < bits.length() && (bits.get(word) & (1L << userId)) != 0;
+    }
+    
+    @TransactionalEventListener
+    public void onUserStatusChanged(UserStatusChangedEvent event) {
+        apply(event.getUserId(), event.getStatus() == User.UserStatus.BANNED, event.getTokensInvalidBefore());
+    }
+    
+    @Scheduled(fixedDelayString = "${token-revocation.rebuild-interval:600000}",
+            initialDelayString = "${token-revocation.rebuild-interval:600000}")
+    public synchronized void rebuild() {
+        LocalDateTime pollStart = dbNow();
+        AtomicLongArray[] bits = {new AtomicLongArray(bannedBits.length())};
+        Map<Long, Long> epochs = new ConcurrentHashMap<>();
+        long[] banned = {0};
+        
+        jdbcTemplate.query(LOAD_SQL, rs -> {
+            long userId = rs.getLong("id");
+            if (User.UserStatus.BANNED.name().equals(rs.getString("status"))) {
+                bits[0] = ensureCapacity(bits[0], userId);
+                setBit(bits[0], userId, true);
+                banned[0]++;
+            }
+            Timestamp ts = rs.getTimestamp("tokens_invalid_before");
+            if (ts != null) {
+                epochs.put(userId, toEpochSecond(ts.toLocalDateTime()));
+            }
+        });
+        
+        bannedBits = bits[0];
+        invalidBefore.clear();
+        invalidBefore.putAll(epochs);
+        lastPolledAt = pollStart;
+        log.info("Loaded token revocation state: {} banned users, {} token epochs", banned[0], epochs.size());
+    }
+    
+    // 其它节点的封禁/解封通过 updated_at 增量同步
+    @Scheduled(fixedDelayString = "${token-revocation.poll-interval:5000}")
+    public synchronized void pollChanges() {
+        LocalDateTime pollStart = dbNow();
+        jdbcTemplate.query(CHANGED_SQL, rs -> {
+            Timestamp ts = rs.getTimestamp("tokens_invalid_before");
+            apply(rs.getLong("id"),
+                    User.UserStatus.BANNED.name().equals(rs.getString("status")),
+                    ts != null ? ts.toLocalDateTime() : null);
+        }, Timestamp.valueOf(lastPolledAt.minusSeconds(POLL_OVERLAP_SECONDS)));
+        lastPolledAt = pollStart;
+    }
+    
+    public Map<String, Object> getStats() {
+        AtomicLongArray bits = bannedBits;
+        long banned = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            banned += Long.bitCount(bits.get(i));
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("bannedUsers", banned);
+        stats.put("bitmapBytes", (long) bits.length() * Long.BYTES);
+        stats.put("tokenEpochEntries", invalidBefore.size());
+        // ConcurrentHashMap 每个条目约 80 字节 (节点 + 两个装箱 Long)
+        stats.put("tokenEpochEstimatedBytes", invalidBefore.size() * 80L);
+        stats.put("revokedRequests", revokedRequests.sum());
+        stats.put("lastPolledAt", lastPolledAt);
+        return stats;
+    }
+    
+    private synchronized void apply(long userId, boolean banned, LocalDateTime tokensInvalidBefore) {
+        if (banned) {
+            bannedBits = ensureCapacity(bannedBits, userId);
+        }
+        if (userId >> 6 < bannedBits.length()) {
+            setBit(bannedBits, userId, banned);
+        }
+        if (tokensInvalidBefore != null) {
+            invalidBefore.merge(userId, toEpochSecond(tokensInvalidBefore), Math::max);
+        }
+    }
+    
+    private LocalDateTime dbNow() {
+        return jdbcTemplate.queryForObject(DB_NOW_SQL, Timestamp.class).toLocalDateTime();
+    }
+    
+    private static AtomicLongArray ensureCapacity(AtomicLongArray bits, long userId) {
+        int word = (int) (userId >>> 6);
+        if (word < bits.length()) {
+            return bits;
+        }
+        int length = bits.length();
+        while (length <= word) {
+            length *= 2;
+        }
+        AtomicLongArray grown = new AtomicLongArray(length);
+        for (int i = 0; i < bits.length(); i++) {
+            grown.set(i, bits.get(i));
+        }
+        return grown;
+    }
+    
+    private static void setBit(AtomicLongArray bits, long userId, boolean value) {
+        int word = (int) (userId >>> 6);
+        long mask = 1L << userId;
+        if (value) {
+            bits.getAndAccumulate(word, mask, (a, b) -> a | b);
+        } else {
+            bits.getAndAccumulate(word, ~mask, (a, b) -> a & b);
+        }
+    }
+    
+    private static long toEpochSecond(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+}
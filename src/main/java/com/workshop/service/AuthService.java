@@ -3,19 +3,26 @@ package com.workshop.service;
 import com.workshop.dto.auth.AuthResponse;
 import com.workshop.dto.auth.LoginRequest;
 import com.workshop.dto.auth.RegisterRequest;
+import com.workshop.entity.Transaction;
 import com.workshop.entity.User;
+import com.workshop.event.TaskActionEvent;
 import com.workshop.exception.BusinessException;
 import com.workshop.repository.UserRepository;
+import com.workshop.security.ClientIpResolver;
 import com.workshop.security.JwtTokenProvider;
-import com.workshop.util.InviteCodeGenerator;
+import com.workshop.security.RateLimiter;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Service
 @RequiredArgsConstructor
@@ -26,6 +33,12 @@ public class AuthService {
     private final JwtTokenProvider jwtTokenProvider;
     private final SystemConfigService systemConfigService;
     private final TransactionService transactionService;
+    private final LastLoginTracker lastLoginTracker;
+    private final UserExistenceService userExistenceService;
+    private final RateLimiter rateLimiter;
+    private final ClientIpResolver clientIpResolver;
+    private final ApplicationEventPublisher eventPublisher;
+    private final InviteCodeAllocator inviteCodeAllocator;
     
     @Transactional
     public AuthResponse register(RegisterRequest request, HttpServletRequest httpRequest) {
@@ -33,11 +46,11 @@ public class AuthService {
             throw new BusinessException("注册功能已关闭");
         }
         
-        if (userRepository.existsByUsername(request.getUsername())) {
+        if (userExistenceService.usernameExists(request.getUsername())) {
             throw new BusinessException("用户名已存在");
         }
         
-        if (userRepository.existsByEmail(request.getEmail())) {
+        if (userExistenceService.emailExists(request.getEmail())) {
             throw new BusinessException("邮箱已被注册");
         }
         
@@ -46,12 +59,21 @@ public class AuthService {
             throw new BusinessException("该邮箱后缀不允许注册");
         }
         
-        String clientIp = getClientIp(httpRequest);
-        long ipRegistrationCount = userRepository.countByRegistrationIpAndDate(clientIp, LocalDate.now());
+        String clientIp = clientIpResolver.getClientIp(httpRequest);
+        String registrationKey = "register:" + clientIp;
         int dailyLimit = systemConfigService.getDailyIpRegistrationLimit();
-        if (ipRegistrationCount >= dailyLimit) {
+        // 先原子占用名额再写库，事务未提交 (含校验失败、唯一约束冲突) 时归还，避免并发注册同时通过检查
+        if (!rateLimiter.tryReserveDaily(registrationKey, dailyLimit)) {
             throw new BusinessException("该IP今日注册次数已达上限");
         }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    rateLimiter.releaseDaily(registrationKey);
+                }
+            }
+        });
         
         User user = new User();
         user.setUsername(request.getUsername());
@@ -60,11 +82,7 @@ public class AuthService {
         user.setPasswordHash(passwordEncoder.encode(request.getPassword()));
         user.setRegistrationIp(clientIp);
         
-        String inviteCode;
-        do {
-            inviteCode = InviteCodeGenerator.generate();
-        } while (userRepository.existsByInviteCode(inviteCode));
-        user.setInviteCode(inviteCode);
+        user.setInviteCode(inviteCodeAllocator.allocate());
         
         if (request.getInviteCode() != null && !request.getInviteCode().isEmpty()) {
             User inviter = userRepository.findByInviteCode(request.getInviteCode())
@@ -72,7 +90,13 @@ public class AuthService {
             user.setInviterId(inviter.getId());
         }
         
-        user = userRepository.save(user);
+        try {
+            user = userRepository.save(user);
+        } catch (DataIntegrityViolationException e) {
+            // 过滤器只覆盖本节点已知的数据，并发注册由唯一约束兜底
+            throw new BusinessException("用户名或邮箱已被注册");
+        }
+        userExistenceService.addUser(user.getUsername(), user.getEmail());
         
         if (user.getInviterId() != null) {
             handleInviteReward(user.getId(), user.getInviterId());
@@ -93,8 +117,13 @@ public class AuthService {
             throw new BusinessException("登录功能已关闭");
         }
         
-        User user = userRepository.findByUsername(request.getUsernameOrEmail())
-                .or(() -> userRepository.findByEmail(request.getUsernameOrEmail()))
+        // 一次查询同时匹配用户名与邮箱，用户名匹配优先
+        String account = request.getUsernameOrEmail();
+        List<User> candidates = userRepository.findByUsernameOrEmail(account, account);
+        User user = candidates.stream()
+                .filter(u -> u.getUsername().equals(account))
+                .findFirst()
+                .or(() -> candidates.stream().findFirst())
                 .orElseThrow(() -> new BusinessException("用户名或密码错误"));
         
         if (!passwordEncoder.matches(request.getPassword(), user.getPasswordHash())) {
@@ -105,8 +134,13 @@ public class AuthService {
             throw new BusinessException("账号已被封禁: " + user.getBanReason());
         }
         
-        user.setLastLoginAt(LocalDateTime.now());
-        userRepository.save(user);
+        // 旧哈希（无前缀或 cost 低于当前配置）在登录成功时重新计算
+        if (passwordEncoder.upgradeEncoding(user.getPasswordHash())) {
+            userRepository.updatePasswordHash(user.getId(), passwordEncoder.encode(request.getPassword()));
+        }
+        
+        lastLoginTracker.record(user.getId(), LocalDateTime.now());
+        eventPublisher.publishEvent(new TaskActionEvent(user.getId(), TaskActionEvent.Action.LOGIN, null, 0));
         
         String token = jwtTokenProvider.generateToken(
                 user.getId(), 
@@ -118,19 +152,9 @@ public class AuthService {
     }
     
     private void handleInviteReward(Long inviteeId, Long inviterId) {
-        transactionService.addDrops(inviteeId, 20, "invite", inviterId, "被邀请奖励");
-        transactionService.addDrops(inviterId, 10, "invite", inviteeId, "邀请奖励");
-        transactionService.addLightning(inviterId, 10, "invite", inviteeId, "邀请奖励");
-    }
-    
-    private String getClientIp(HttpServletRequest request) {
-        String ip = request.getHeader("X-Forwarded-For");
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("X-Real-IP");
-        }
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getRemoteAddr();
-        }
-        return ip;
+        transactionService.post(List.of(
+                PostingLeg.drops(inviteeId, 20, Transaction.TransactionType.INVITE, inviterId, "被邀请奖励"),
+                PostingLeg.drops(inviterId, 10, Transaction.TransactionType.INVITE, inviteeId, "邀请奖励"),
+                PostingLeg.lightning(inviterId, 10, Transaction.TransactionType.INVITE, inviteeId, "邀请奖励")));
     }
 }
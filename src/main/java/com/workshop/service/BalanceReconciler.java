@@ -0,0 +1,338 @@
+package com.workshop.service;
+
+import com.workshop.util.LongPairHashMap;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 流水与余额对账：balance_snapshots 保存截至高水位 id 的每用户流水合计 (含期初余额)，每次只读高水位之后新增的流水，
+// 再按用户 id 区间并行比对 users 余额，输出偏差账户
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BalanceReconciler {
+    
+    private static final int FETCH_SIZE = 5000;
+    private static final int WRITE_BATCH_SIZE = 1000;
+    
+    private static final String STATE_SQL =
+            "SELECT high_water_id, candidate_id, candidate_at, opened_at FROM balance_snapshot_state WHERE id = 1";
+    
+    private static final String LOCK_STATE_SQL =
+            "SELECT high_water_id, opened_at FROM balance_snapshot_state WHERE id = 1 FOR UPDATE";
+    
+    // 期初余额：早期签到等变动没有写流水，首次对账时把当前余额减去高水位之后的流水作为快照，
+    // 之后的偏差只来自新流水。单条语句内余额与流水读自同一快照
+    private static final String SEED_OPENING_SQL =
+            "INSERT INTO balance_snapshots (user_id, drops, lightning, updated_at) " +
+            "SELECT u.id, u.drops + COALESCE(b.drops, 0) - COALESCE(t.drops, 0), " +
+            "u.lightning - COALESCE(t.lightning, 0), now() FROM users u " +
+            "LEFT JOIN (SELECT user_id, SUM(drops) AS drops FROM balance_shards GROUP BY user_id) b ON b.user_id = u.id " +
+            "LEFT JOIN (SELECT user_id, SUM(change_drops) AS drops, SUM(change_lightning) AS lightning " +
+            "FROM transactions WHERE id > ? GROUP BY user_id) t ON t.user_id = u.id " +
+            "ON CONFLICT (user_id) DO UPDATE SET drops = EXCLUDED.drops, lightning = EXCLUDED.lightning, " +
+            "updated_at = now()";
+    
+    private static final String MARK_OPENED_SQL =
+            "UPDATE balance_snapshot_state SET opened_at = now(), updated_at = now() WHERE id = 1";
+    
+    private static final String SEQUENCE_VALUE_SQL =
+            "SELECT last_value FROM transactions_ledger_seq";
+    
+    private static final String STREAM_SQL =
+            "SELECT user_id, change_drops, change_lightning FROM transactions WHERE id > ? AND id <= ? ORDER BY id";
+    
+    private static final String UPSERT_SNAPSHOT_SQL =
+            "INSERT INTO balance_snapshots (user_id, drops, lightning, updated_at) VALUES (?, ?, ?, now()) " +
+            "ON CONFLICT (user_id) DO UPDATE SET drops = balance_snapshots.drops + EXCLUDED.drops, " +
+            "lightning = balance_snapshots.lightning + EXCLUDED.lightning, updated_at = now()";
+    
+    // 高水位只能从读到的旧值推进，并发执行时只有一个节点能写入
+    private static final String ADVANCE_STATE_SQL =
+            "UPDATE balance_snapshot_state SET high_water_id = ?, candidate_id = ?, candidate_at = ?, updated_at = now() " +
+            "WHERE id = 1 AND high_water_id = ?";
+    
+    // 单条语句内 users 与流水读自同一快照，余额与流水总在同一事务中写入，因此无需额外加锁
+    private static final String DRIFT_SQL =
+            "SELECT u.id, u.drops + COALESCE(b.drops, 0) AS drops, u.lightning, " +
+            "COALESCE(s.drops, 0) + COALESCE(t.drops, 0) AS ledger_drops, " +
+            "COALESCE(s.lightning, 0) + COALESCE(t.lightning, 0) AS ledger_lightning " +
+            "FROM users u " +
+            "LEFT JOIN balance_snapshots s ON s.user_id = u.id " +
+            "LEFT JOIN (SELECT user_id, SUM(drops) AS drops FROM balance_shards " +
+            "WHERE user_id BETWEEN ? AND ? GROUP BY user_id) b ON b.user_id = u.id " +
+            "LEFT JOIN (SELECT user_id, SUM(change_drops) AS drops, SUM(change_lightning) AS lightning " +
+            "FROM transactions WHERE id > ? AND user_id BETWEEN ? AND ? GROUP BY user_id) t ON t.user_id = u.id " +
+            "WHERE u.id BETWEEN ? AND ? " +
+            "AND (u.drops + COALESCE(b.drops, 0) <> COALESCE(s.drops, 0) + COALESCE(t.drops, 0) " +
+            "OR u.lightning <> COALESCE(s.lightning, 0) + COALESCE(t.lightning, 0)) " +
+            "ORDER BY u.id";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    
+    @Value("${reconciliation.shards:4}")
+    private int shards;
+    
+    // 流水序号被分配后，须经过该时长才视为之前的 id 都已提交
+    @Value("${reconciliation.settle-seconds:300}")
+    private long settleSeconds;
+    
+    @Value("${reconciliation.max-reported-accounts:1000}")
+    private int maxReportedAccounts;
+    
+    private volatile ExecutorService executor;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Map<String, Object> lastReport = Map.of("status", "NOT_RUN");
+    
+    @Scheduled(cron = "${reconciliation.cron:0 */10 * * * *}")
+    public void scheduledRun() {
+        try {
+            run();
+        } catch (Exception e) {
+            log.error("Balance reconciliation failed", e);
+        }
+    }
+    
+    public Map<String, Object> run() {
+        if (!running.compareAndSet(false, true)) {
+            return lastReport;
+        }
+        try {
+            lastReport = reconcile();
+            return lastReport;
+        } finally {
+            running.set(false);
+        }
+    }
+    
+    public Map<String, Object> getLastReport() {
+        return lastReport;
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+    
+    private Map<String, Object> reconcile() {
+        long startedAt = System.currentTimeMillis();
+        if (jdbcTemplate.queryForMap(STATE_SQL).get("opened_at") == null) {
+            seedOpening();
+        }
+        Map<String, Object> state = jdbcTemplate.queryForMap(STATE_SQL);
+        long highWaterId = ((Number) state.get("high_water_id")).longValue();
+        Number candidateId = (Number) state.get("candidate_id");
+        Timestamp candidateAt = (Timestamp) state.get("candidate_at");
+        
+        // 候选值已稳定足够久时推进高水位，同时记下新的候选值
+        LocalDateTime now = LocalDateTime.now();
+        boolean candidateSettled = candidateId != null && candidateAt != null
+                && candidateAt.toLocalDateTime().isBefore(now.minusSeconds(settleSeconds));
+        long targetId = candidateSettled ? Math.max(highWaterId, candidateId.longValue()) : highWaterId;
+        Long sequenceValue = jdbcTemplate.queryForObject(SEQUENCE_VALUE_SQL, Long.class);
+        
+        List<long[]> ranges = shardRanges();
+        AtomicLong scannedRows = new AtomicLong();
+        int snapshotUpdates = 0;
+        if (targetId > highWaterId) {
+            List<LongPairHashMap> deltas = streamDeltas(highWaterId, targetId, ranges, scannedRows);
+            for (LongPairHashMap delta : deltas) {
+                snapshotUpdates += delta.size();
+            }
+            if (!writeSnapshots(deltas, highWaterId, targetId, sequenceValue, now)) {
+                log.info("Balance snapshot already advanced by another node, skipping this run");
+                return lastReport;
+            }
+        } else if (candidateId == null || candidateSettled) {
+            jdbcTemplate.update(ADVANCE_STATE_SQL, highWaterId, sequenceValue, Timestamp.valueOf(now), highWaterId);
+        }
+        
+        long hwm = targetId;
+        List<List<Map<String, Object>>> driftByShard = runShards(ranges, range -> findDrift(hwm, range));
+        List<Map<String, Object>> drifted = new ArrayList<>();
+        long driftedCount = 0;
+        for (List<Map<String, Object>> shardDrift : driftByShard) {
+            driftedCount += shardDrift.size();
+            for (Map<String, Object> account : shardDrift) {
+                if (drifted.size() < maxReportedAccounts) {
+                    drifted.add(account);
+                }
+            }
+        }
+        if (driftedCount > 0) {
+            log.warn("Balance reconciliation found {} drifted accounts", driftedCount);
+        }
+        
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("status", "COMPLETED");
+        report.put("finishedAt", LocalDateTime.now());
+        report.put("durationMillis", System.currentTimeMillis() - startedAt);
+        report.put("previousHighWaterId", highWaterId);
+        report.put("highWaterId", hwm);
+        report.put("shards", ranges.size());
+        report.put("scannedLedgerRows", scannedRows.get());
+        report.put("snapshotUpdates", snapshotUpdates);
+        report.put("driftedAccounts", driftedCount);
+        report.put("accounts", drifted);
+        return report;
+    }
+    
+    // 锁住状态行后写入期初快照，多个节点同时首次运行时只有一个执行
+    private void seedOpening() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Map<String, Object> state = jdbcTemplate.queryForMap(LOCK_STATE_SQL);
+            if (state.get("opened_at") != null) {
+                return;
+            }
+            long highWaterId = ((Number) state.get("high_water_id")).longValue();
+            int seeded = jdbcTemplate.update(SEED_OPENING_SQL, highWaterId);
+            jdbcTemplate.update(MARK_OPENED_SQL);
+            log.info("Seeded opening balance snapshots for {} users at high-water id {}", seeded, highWaterId);
+        });
+    }
+    
+    // 服务端游标 (事务内 + fetchSize) 按 id 顺序只读一遍新增流水，按用户 id 区间分别累加到每用户合计
+    private List<LongPairHashMap> streamDeltas(long fromId, long toId, List<long[]> ranges, AtomicLong scannedRows) {
+        List<LongPairHashMap> totals = new ArrayList<>(ranges.size());
+        long[] starts = new long[ranges.size()];
+        for (int i = 0; i < ranges.size(); i++) {
+            totals.add(new LongPairHashMap(1024));
+            starts[i] = ranges.get(i)[0];
+        }
+        long[] rows = {0};
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(STREAM_SQL);
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setLong(1, fromId);
+            ps.setLong(2, toId);
+            return ps;
+        }, rs -> {
+            long userId = rs.getLong(1);
+            int index = Arrays.binarySearch(starts, userId);
+            // 区间首尾相接且首区间下界为 Long.MIN_VALUE，未命中时插入点的前一个即所在区间
+            totals.get(index >= 0 ? index : -index - 2).add(userId, rs.getLong(2), rs.getLong(3));
+            rows[0]++;
+        }));
+        scannedRows.addAndGet(rows[0]);
+        return totals;
+    }
+    
+    // 所有分片的增量与高水位在同一事务中写入；高水位已被其它节点推进时放弃
+    private boolean writeSnapshots(List<LongPairHashMap> deltas, long fromId, long toId,
+                                Long sequenceValue, LocalDateTime now) {
+        Boolean written = transactionTemplate.execute(status -> {
+            int advanced = jdbcTemplate.update(ADVANCE_STATE_SQL, toId, sequenceValue, Timestamp.valueOf(now), fromId);
+            if (advanced == 0) {
+                status.setRollbackOnly();
+                return false;
+            }
+            List<Object[]> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+            for (LongPairHashMap delta : deltas) {
+                delta.forEach((userId, drops, lightning) -> {
+                    batch.add(new Object[]{userId, drops, lightning});
+                    if (batch.size() >= WRITE_BATCH_SIZE) {
+                        jdbcTemplate.batchUpdate(UPSERT_SNAPSHOT_SQL, batch);
+                        batch.clear();
+                    }
+                });
+            }
+            if (!batch.isEmpty()) {
+                jdbcTemplate.batchUpdate(UPSERT_SNAPSHOT_SQL, batch);
+            }
+            return true;
+        });
+        return Boolean.TRUE.equals(written);
+    }
+    
+    private List<Map<String, Object>> findDrift(long highWaterId, long[] range) {
+        return jdbcTemplate.query(DRIFT_SQL, (rs, rowNum) -> {
+            Map<String, Object> account = new LinkedHashMap<>();
+            account.put("userId", rs.getLong("id"));
+            account.put("drops", rs.getLong("drops"));
+            account.put("ledgerDrops", rs.getLong("ledger_drops"));
+            account.put("lightning", rs.getLong("lightning"));
+            account.put("ledgerLightning", rs.getLong("ledger_lightning"));
+            return account;
+        }, range[0], range[1], highWaterId, range[0], range[1], range[0], range[1]);
+    }
+    
+    // 按 users 的 id 范围均分为若干连续区间
+    private List<long[]> shardRanges() {
+        Map<String, Object> bounds = jdbcTemplate.queryForMap("SELECT MIN(id) AS lo, MAX(id) AS hi FROM users");
+        long lo = bounds.get("lo") != null ? ((Number) bounds.get("lo")).longValue() : 0;
+        long hi = bounds.get("hi") != null ? ((Number) bounds.get("hi")).longValue() : 0;
+        int count = Math.max(1, shards);
+        long width = Math.max(1, (hi - lo + count) / count);
+        List<long[]> ranges = new ArrayList<>(count);
+        for (long start = lo; start <= hi; start += width) {
+            ranges.add(new long[]{start, Math.min(hi, start + width - 1)});
+        }
+        if (ranges.isEmpty()) {
+            ranges.add(new long[]{lo, hi});
+        }
+        // 流水中可能有已不存在的用户，首尾区间放开边界
+        ranges.get(0)[0] = Long.MIN_VALUE;
+        ranges.get(ranges.size() - 1)[1] = Long.MAX_VALUE;
+        return ranges;
+    }
+    
+    private <T> List<T> runShards(List<long[]> ranges, ShardTask<T> task) {
+        if (executor == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    executor = Executors.newFixedThreadPool(Math.max(1, shards), r -> {
+                        Thread thread = new Thread(r, "balance-reconciler");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        List<Future<T>> futures = new ArrayList<>(ranges.size());
+        for (long[] range : ranges) {
+            futures.add(executor.submit(() -> task.run(range)));
+        }
+        List<T> results = new ArrayList<>(ranges.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(true));
+            throw new IllegalStateException("Balance reconciliation interrupted", e);
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw new IllegalStateException("Balance reconciliation shard failed", e.getCause());
+        }
+        return results;
+    }
+    
+    @FunctionalInterface
+    private interface ShardTask<T> {
+        T run(long[] range);
+    }
+}
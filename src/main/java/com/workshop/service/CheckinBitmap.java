@@ -0,0 +1,242 @@
+package com.workshop.service;
+
+import com.workshop.util.CompressedBitmap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// 当日已签到用户的内存位图：启动时从当天记录构建，签到成功后写入，跨天时整体替换为新位图。
+// 其它节点的签到由定时补齐同步，在此之前本节点可能短暂返回未签到，实际签到仍由数据库唯一键保证不重复
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CheckinBitmap {
+    
+    private static final int FETCH_SIZE = 1000;
+    
+    private static final String LOAD_SQL =
+            "SELECT user_id FROM daily_task_logs WHERE date = ? AND is_checked_in";
+    
+    private static final String EXISTS_SQL =
+            "SELECT EXISTS (SELECT 1 FROM daily_task_logs WHERE user_id = ? AND date = ? AND is_checked_in)";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    
+    // 从未签到的用户也缓存，避免每次轮询都回库
+    private static final LocalDate NEVER = LocalDate.MIN;
+    
+    @Value("${checkin-bitmap.last-date-cache-size:500000}")
+    private int lastDateCacheSize;
+    
+    private volatile DayBitmap current;
+    
+    // 用户最近签到日：首次读取时从签到历史加载，之后由本节点签到和补齐更新
+    private final ConcurrentHashMap<Long, LocalDate> lastCheckinDates = new ConcurrentHashMap<>();
+    
+    private final LongAdder memoryReads = new LongAdder();
+    private final LongAdder checkedInReads = new LongAdder();
+    private final LongAdder databaseFallbacks = new LongAdder();
+    private final LongAdder lastDateLoads = new LongAdder();
+    private volatile long lastResyncRows;
+    private volatile LocalDateTime lastResyncAt;
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            LocalDate today = LocalDate.now();
+            DayBitmap day = new DayBitmap(today);
+            long loaded = load(day);
+            current = day;
+            log.info("Check-in bitmap for {} built with {} users", today, loaded);
+        } catch (Exception e) {
+            log.error("Failed to build check-in bitmap, falling back to database", e);
+        }
+    }
+    
+    public boolean isCheckedIn(Long userId, LocalDate date) {
+        DayBitmap day = currentDay();
+        if (day == null || !day.date.equals(date)) {
+            databaseFallbacks.increment();
+            return Boolean.TRUE.equals(jdbcTemplate.queryForObject(EXISTS_SQL, Boolean.class, userId, Date.valueOf(date)));
+        }
+        memoryReads.increment();
+        boolean checkedIn = day.bitmap.contains(userId);
+        if (checkedIn) {
+            checkedInReads.increment();
+        }
+        return checkedIn;
+    }
+    
+    // 事务提交后才写入位图，回滚的签到不会被记为已签到
+    public void markCheckedIn(Long userId, LocalDate date) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            add(userId, date);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                add(userId, date);
+            }
+        });
+    }
+    
+    public LocalDate getLastCheckinDate(Long userId, Function<Long, LocalDate> loader) {
+        LocalDate cached = lastCheckinDates.get(userId);
+        if (cached == null) {
+            lastDateLoads.increment();
+            LocalDate loaded = loader.apply(userId);
+            cached = loaded != null ? loaded : NEVER;
+            // 超出上限时整体清空，之后按需重新加载
+            if (lastCheckinDates.size() >= lastDateCacheSize) {
+                lastCheckinDates.clear();
+            }
+            updateLastDate(userId, cached);
+            cached = lastCheckinDates.getOrDefault(userId, cached);
+        }
+        return cached == NEVER ? null : cached;
+    }
+    
+    public boolean isReady(LocalDate date) {
+        DayBitmap day = currentDay();
+        return day != null && day.date.equals(date);
+    }
+    
+    // 日志签到在本节点的去重：原子置位，返回 false 表示今日已签到。调用前须确认位图已就绪
+    public boolean claim(Long userId, LocalDate date) {
+        DayBitmap day = currentDay();
+        return day != null && day.date.equals(date) && day.bitmap.add(userId);
+    }
+    
+    // 日志应答失败时归还当日签到
+    public void release(Long userId, LocalDate date) {
+        DayBitmap day = currentDay();
+        if (day != null && day.date.equals(date)) {
+            day.bitmap.remove(userId);
+        }
+    }
+    
+    @Scheduled(cron = "${checkin-bitmap.rotate-cron:0 0 0 * * *}")
+    public void rotate() {
+        currentDay();
+    }
+    
+    // 补齐其它节点的签到
+    @Scheduled(fixedDelayString = "${checkin-bitmap.resync-interval:60000}",
+            initialDelayString = "${checkin-bitmap.resync-interval:60000}")
+    public void resync() {
+        DayBitmap day = currentDay();
+        if (day == null) {
+            return;
+        }
+        try {
+            lastResyncRows = load(day);
+            lastResyncAt = LocalDateTime.now();
+        } catch (Exception e) {
+            log.warn("Failed to resync check-in bitmap", e);
+        }
+    }
+    
+    public Map<String, Object> getStats() {
+        DayBitmap day = current;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ready", day != null);
+        if (day != null) {
+            stats.put("date", day.date);
+            stats.put("checkedInUsers", day.bitmap.getCardinality());
+            stats.put("containers", day.bitmap.getContainerCount());
+            stats.put("memoryBytes", day.bitmap.getMemoryBytes());
+        }
+        long reads = memoryReads.sum();
+        long fallbacks = databaseFallbacks.sum();
+        stats.put("memoryReads", reads);
+        stats.put("checkedInReads", checkedInReads.sum());
+        stats.put("databaseFallbacks", fallbacks);
+        stats.put("hitRate", reads + fallbacks > 0 ? (double) reads / (reads + fallbacks) : 0.0);
+        stats.put("lastDateCacheSize", lastCheckinDates.size());
+        stats.put("lastDateLoads", lastDateLoads.sum());
+        stats.put("lastResyncRows", lastResyncRows);
+        stats.put("lastResyncAt", lastResyncAt);
+        return stats;
+    }
+    
+    private void add(Long userId, LocalDate date) {
+        lastCheckinDates.computeIfPresent(userId, (id, last) -> last.isBefore(date) ? date : last);
+        DayBitmap day = currentDay();
+        if (day != null && day.date.equals(date)) {
+            day.bitmap.add(userId);
+        }
+    }
+    
+    // 日期变化后换成新的空位图，旧位图整体丢弃
+    private DayBitmap currentDay() {
+        DayBitmap day = current;
+        if (day == null) {
+            return null;
+        }
+        LocalDate today = LocalDate.now();
+        if (!day.date.equals(today)) {
+            synchronized (this) {
+                day = current;
+                if (!day.date.equals(today)) {
+                    day = new DayBitmap(today);
+                    current = day;
+                    log.info("Check-in bitmap rotated to {}", today);
+                }
+            }
+        }
+        return day;
+    }
+    
+    private long load(DayBitmap day) {
+        LongAdder count = new LongAdder();
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(
+                con -> {
+                    PreparedStatement ps = con.prepareStatement(LOAD_SQL);
+                    ps.setDate(1, Date.valueOf(day.date));
+                    ps.setFetchSize(FETCH_SIZE);
+                    return ps;
+                },
+                rs -> {
+                    long userId = rs.getLong(1);
+                    day.bitmap.add(userId);
+                    lastCheckinDates.computeIfPresent(userId, (id, last) -> last.isBefore(day.date) ? day.date : last);
+                    count.increment();
+                }
+        ));
+        return count.sum();
+    }
+    
+    private void updateLastDate(Long userId, LocalDate date) {
+        lastCheckinDates.merge(userId, date, (last, next) -> last.isBefore(next) ? next : last);
+    }
+    
+    private static final class DayBitmap {
+        
+        private final LocalDate date;
+        private final CompressedBitmap bitmap = new CompressedBitmap();
+        
+        private DayBitmap(LocalDate date) {
+            this.date = date;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.workshop.service;
+
+import com.workshop.dto.checkin.CheckinHistoryResponse;
+import com.workshop.exception.BusinessException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 签到历史：checkin_history 每个用户每年一行 BIT(366)，第 n 位 (从 0 起) 表示当年第 n+1 天已签到。
+// 签到时与占用当日签到在同一语句内置位；连续天数、最近签到日和月历都由位运算得出，不扫描 daily_task_logs
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CheckinHistoryService {
+    
+    private static final int WORDS = 6;
+    
+    private static final String LOAD_SQL =
+            "SELECT year, CAST(bits AS text) AS bits FROM checkin_history WHERE user_id = ? ORDER BY year DESC";
+    
+    // 只取最近一年的位串，走 (user_id, year) 主键
+    private static final String LATEST_SQL =
+            "SELECT year, CAST(bits AS text) AS bits FROM checkin_history WHERE user_id = ? ORDER BY year DESC LIMIT 1";
+    
+    // 按用户区间把已有签到记录聚合成位串，与现有位串按位或，可重复执行
+    private static final String BACKFILL_SQL =
+            "INSERT INTO checkin_history (user_id, year, bits) " +
+            "SELECT user_id, CAST(EXTRACT(YEAR FROM date) AS int), " +
+            "bit_or(CAST(B'1' AS bit(366)) >> (CAST(EXTRACT(DOY FROM date) AS int) - 1)) " +
+            "FROM daily_task_logs WHERE is_checked_in AND user_id BETWEEN ? AND ? " +
+            "GROUP BY 1, 2 " +
+            "ON CONFLICT (user_id, year) DO UPDATE SET bits = checkin_history.bits | EXCLUDED.bits";
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    @Value("${checkin-history.backfill-chunk-size:10000}")
+    private int backfillChunkSize;
+    
+    @Value("${checkin-history.backfill-pause-ms:50}")
+    private long backfillPauseMs;
+    
+    private final AtomicBoolean backfilling = new AtomicBoolean();
+    private volatile Map<String, Object> backfillProgress = Map.of("status", "IDLE");
+    
+    public CheckinHistoryResponse getHistory(Long userId, String month) {
+        YearMonth yearMonth;
+        try {
+            yearMonth = month == null || month.isBlank() ? YearMonth.now() : YearMonth.parse(month);
+        } catch (DateTimeParseException e) {
+            throw new BusinessException("无效的月份");
+        }
+        TreeMap<Integer, long[]> years = new TreeMap<>();
+        jdbcTemplate.query(LOAD_SQL, rs -> {
+            years.put(rs.getInt("year"), parse(rs.getString("bits")));
+        }, userId);
+        
+        LocalDate today = LocalDate.now();
+        long[] bits = years.get(yearMonth.getYear());
+        List<Integer> days = new ArrayList<>();
+        int yearTotal = 0;
+        if (bits != null) {
+            int offset = yearMonth.atDay(1).getDayOfYear() - 1;
+            for (int day = 1; day <= yearMonth.lengthOfMonth(); day++) {
+                if (get(bits, offset + day - 1)) {
+                    days.add(day);
+                }
+            }
+            for (long word : bits) {
+                yearTotal += Long.bitCount(word);
+            }
+        }
+        return new CheckinHistoryResponse(lastCheckinDate(years), currentStreak(years, today),
+                yearMonth.toString(), days, yearTotal);
+    }
+    
+    public LocalDate getLastCheckinDate(Long userId) {
+        TreeMap<Integer, long[]> years = new TreeMap<>();
+        jdbcTemplate.query(LATEST_SQL, rs -> {
+            years.put(rs.getInt("year"), parse(rs.getString("bits")));
+        }, userId);
+        return lastCheckinDate(years);
+    }
+    
+    // 今天未签到时从昨天开始数，连续段跨年时接着数上一年
+    private static int currentStreak(Map<Integer, long[]> years, LocalDate today) {
+        LocalDate day = today;
+        long[] bits = years.get(day.getYear());
+        if (bits == null || !get(bits, day.getDayOfYear() - 1)) {
+            day = day.minusDays(1);
+        }
+        int streak = 0;
+        while (true) {
+            bits = years.get(day.getYear());
+            if (bits == null) {
+                return streak;
+            }
+            int index = day.getDayOfYear() - 1;
+            int run = onesEndingAt(bits, index);
+            streak += run;
+            if (run <= index) {
+                return streak;
+            }
+            day = LocalDate.of(day.getYear() - 1, 12, 31);
+        }
+    }
+    
+    private static LocalDate lastCheckinDate(TreeMap<Integer, long[]> years) {
+        for (Integer year : years.descendingKeySet()) {
+            long[] bits = years.get(year);
+            for (int w = WORDS - 1; w >= 0; w--) {
+                if (bits[w] != 0) {
+                    int index = w * 64 + 63 - Long.numberOfLeadingZeros(bits[w]);
+                    return LocalDate.ofYearDay(year, index + 1);
+                }
+            }
+        }
+        return null;
+    }
+    
+    // 从 index 向低位数连续的 1，每次处理一个 64 位字
+    private static int onesEndingAt(long[] bits, int index) {
+        int count = 0;
+        int w = index >>> 6;
+        int shift = 63 - (index & 63);
+        long word = bits[w] << shift;
+        int run = Long.numberOfLeadingZeros(~word);
+        if (run < 64 - shift) {
+            return run;
+        }
+        count += 64 - shift;
+        for (w--; w >= 0; w--) {
+            run = Long.numberOfLeadingZeros(~bits[w]);
+            count += run;
+            if (run < 64) {
+                break;
+            }
+        }
+        return count;
+    }
+    
+    private static boolean get(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+    
+    // BIT(366) 的文本形式最左侧为第 0 位
+    private static long[] parse(String text) {
+        long[] bits = new long[WORDS];
+        for (int i = 0; i < text.length() && i < WORDS * 64; i++) {
+            if (text.charAt(i) == '1') {
+                bits[i >>> 6] |= 1L << i;
+            }
+        }
+        return bits;
+    }
+    
+    public Map<String, Object> startBackfill() {
+        if (!backfilling.compareAndSet(false, true)) {
+            throw new BusinessException("签到历史回填正在运行");
+        }
+        try {
+            Map<String, Object> bounds = jdbcTemplate.queryForMap(
+                    "SELECT MIN(user_id) AS lo, MAX(user_id) AS hi FROM daily_task_logs WHERE is_checked_in");
+            long lo = bounds.get("lo") != null ? ((Number) bounds.get("lo")).longValue() : 0;
+            long hi = bounds.get("hi") != null ? ((Number) bounds.get("hi")).longValue() : -1;
+            backfillProgress = progress("RUNNING", lo, hi, lo - 1, 0, LocalDateTime.now(), null, null);
+            Thread thread = new Thread(() -> backfill(lo, hi), "checkin-history-backfill");
+            thread.setDaemon(true);
+            thread.start();
+            return backfillProgress;
+        } catch (RuntimeException e) {
+            backfilling.set(false);
+            throw e;
+        }
+    }
+    
+    public Map<String, Object> getBackfillProgress() {
+        return backfillProgress;
+    }
+    
+    private void backfill(long lo, long hi) {
+        LocalDateTime startedAt = LocalDateTime.now();
+        long current = lo - 1;
+        long rows = 0;
+        try {
+            for (long from = lo; from <= hi; from += backfillChunkSize) {
+                long to = Math.min(hi, from + backfillChunkSize - 1);
+                rows += jdbcTemplate.update(BACKFILL_SQL, from, to);
+                current = to;
+                backfillProgress = progress("RUNNING", lo, hi, current, rows, startedAt, null, null);
+                if (backfillPauseMs > 0) {
+                    Thread.sleep(backfillPauseMs);
+                }
+            }
+            backfillProgress = progress("COMPLETED", lo, hi, current, rows, startedAt, LocalDateTime.now(), null);
+            log.info("Check-in history backfill wrote {} user-years", rows);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            backfillProgress = progress("CANCELLED", lo, hi, current, rows, startedAt, LocalDateTime.now(), null);
+        } catch (Exception e) {
+            log.error("Check-in history backfill failed at user id {}", current, e);
+            backfillProgress = progress("FAILED", lo, hi, current, rows, startedAt, LocalDateTime.now(), e.getMessage());
+        } finally {
+            backfilling.set(false);
+        }
+    }
+    
+    private static Map<String, Object> progress(String status, long lo, long hi, long current, long rows,
+                                                LocalDateTime startedAt, LocalDateTime finishedAt, String error) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("status", status);
+        map.put("minUserId", lo);
+        map.put("maxUserId", hi);
+        map.put("currentUserId", current);
+        long total = hi - lo + 1;
+        map.put("percent", total > 0 ? Math.min(100.0, (current - lo + 1) * 100.0 / total) : 100.0);
+        map.put("userYearsWritten", rows);
+        map.put("startedAt", startedAt);
+        map.put("finishedAt", finishedAt);
+        map.put("error", error);
+        return map;
+    }
+}
@@ -2,17 +2,18 @@ package com.workshop.service;
 
 import com.workshop.dto.checkin.CheckinResponse;
 import com.workshop.dto.checkin.CheckinStatusResponse;
-import com.workshop.entity.DailyTaskLog;
-import com.workshop.entity.User;
+import com.workshop.entity.Transaction;
 import com.workshop.exception.BusinessException;
-import com.workshop.repository.DailyTaskLogRepository;
-import com.workshop.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.Date;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Random;
 
 @Service
@@ -20,61 +21,102 @@ import java.util.Random;
 @Slf4j
 public class CheckinService {
     
-    private final DailyTaskLogRepository dailyTaskLogRepository;
-    private final UserRepository userRepository;
+    // 当日记录不存在则插入，已存在且未签到则置为已签到；已签到时不返回行。并发请求在唯一键上串行，只有一个能拿到 id
+    private static final String CLAIM_CTE =
+            "WITH claim AS (" +
+            "INSERT INTO daily_task_logs (user_id, date, view_count, like_count, donate_drops, is_checked_in, login_rewarded) " +
+            "SELECT id, ?, 0, 0, 0, true, false FROM users WHERE id = ? " +
+            "ON CONFLICT (user_id, date) DO UPDATE SET is_checked_in = true WHERE NOT daily_task_logs.is_checked_in " +
+            "RETURNING id), " +
+            // 签到历史位串在同一语句内置位，位 n 为当年第 n+1 天
+            "history AS (INSERT INTO checkin_history (user_id, year, bits) " +
+            "SELECT ?, ?, CAST(B'1' AS bit(366)) >> ? WHERE EXISTS (SELECT 1 FROM claim) " +
+            "ON CONFLICT (user_id, year) DO UPDATE SET bits = checkin_history.bits | EXCLUDED.bits) ";
+    
+    private static final String BALANCE_SQL = "SELECT drops FROM users WHERE id = ?";
+    
+    // log_id 为空表示今日已签到，无结果表示用户不存在
+    private static final String CLAIM_AND_CREDIT_SQL = CLAIM_CTE +
+            ", credit AS (UPDATE users SET drops = drops + ? WHERE id = ? AND EXISTS (SELECT 1 FROM claim) RETURNING drops) " +
+            "SELECT c.id AS log_id, COALESCE(cr.drops, u.drops) AS drops " +
+            "FROM users u LEFT JOIN claim c ON true LEFT JOIN credit cr ON true WHERE u.id = ?";
+    
+    private final CheckinBitmap checkinBitmap;
+    private final CheckinHistoryService checkinHistoryService;
+    private final RewardJournal rewardJournal;
+    private final LedgerAppender ledgerAppender;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final HotAccountService hotAccountService;
     private final Random random = new Random();
     
-    @Transactional
     public CheckinResponse checkin(Long userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new BusinessException("用户不存在"));
-        
         LocalDate today = LocalDate.now();
-        
-        DailyTaskLog taskLog = dailyTaskLogRepository.findByUserIdAndDate(userId, today)
-                .orElseGet(() -> {
-                    DailyTaskLog newLog = new DailyTaskLog();
-                    newLog.setUserId(userId);
-                    newLog.setDate(today);
-                    newLog.setIsCheckedIn(false);
-                    newLog.setLoginRewarded(false);
-                    newLog.setViewCount(0);
-                    newLog.setLikeCount(0);
-                    newLog.setDonateDrops(0);
-                    return newLog;
-                });
-        
-        if (taskLog.getIsCheckedIn()) {
-            throw new BusinessException("今日已签到，请明天再来");
-        }
-        
         int dropsReward = generateNormalDistribution();
         
-        user.setDrops(user.getDrops() + dropsReward);
-        userRepository.save(user);
-        
-        taskLog.setIsCheckedIn(true);
-        dailyTaskLogRepository.save(taskLog);
+        // 日志开启且位图就绪时不开事务：落盘即应答，当日签到由日志写库时占用；否则一条语句内占用并入账
+        long totalDrops = rewardJournal.isEnabled() && checkinBitmap.isReady(today)
+                ? checkinJournaled(userId, today, dropsReward)
+                : transactionTemplate.execute(status -> checkinDirectly(userId, today, dropsReward));
         
         log.info("User {} checked in successfully, earned {} drops", userId, dropsReward);
         
         CheckinResponse response = new CheckinResponse();
         response.setDrops(dropsReward);
-        response.setTotalDrops(user.getDrops());
+        response.setTotalDrops((int) totalDrops);
         response.setCheckedInToday(true);
         response.setLastCheckinDate(today);
         
         return response;
     }
     
+    // 本节点用位图原子去重，只有一次主键读取余额，等待落盘期间不持有连接。
+    // 其它节点尚未同步到位图的同日签到也会应答，写库时只有先占用的一条入账
+    private long checkinJournaled(Long userId, LocalDate today, int dropsReward) {
+        if (checkinBitmap.isCheckedIn(userId, today)) {
+            throw new BusinessException("今日已签到，请明天再来");
+        }
+        List<Long> balance = jdbcTemplate.queryForList(BALANCE_SQL, Long.class, userId);
+        if (balance.isEmpty()) {
+            throw new BusinessException("用户不存在");
+        }
+        if (!checkinBitmap.claim(userId, today)) {
+            throw new BusinessException("今日已签到，请明天再来");
+        }
+        try {
+            rewardJournal.grantCheckin(userId, today, dropsReward, "每日签到");
+        } catch (RuntimeException e) {
+            checkinBitmap.release(userId, today);
+            throw e;
+        }
+        checkinBitmap.markCheckedIn(userId, today);
+        // 余额展示加上尚未入库的部分 (含本次)
+        return balance.get(0) + hotAccountService.getShardBalance(userId) + rewardJournal.getPendingDrops(userId);
+    }
+    
+    private long checkinDirectly(Long userId, LocalDate today, int dropsReward) {
+        RowMapper<long[]> mapper = (rs, rowNum) -> new long[]{rs.getLong("log_id"), rs.getLong("drops")};
+        List<long[]> rows = jdbcTemplate.query(CLAIM_AND_CREDIT_SQL, mapper, Date.valueOf(today), userId,
+                userId, today.getYear(), today.getDayOfYear() - 1, dropsReward, userId, userId);
+        if (rows.isEmpty()) {
+            throw new BusinessException("用户不存在");
+        }
+        long logId = rows.get(0)[0];
+        if (logId == 0) {
+            throw new BusinessException("今日已签到，请明天再来");
+        }
+        ledgerAppender.append(userId, Transaction.TransactionType.CHECKIN, dropsReward, 0, logId, "每日签到");
+        checkinBitmap.markCheckedIn(userId, today);
+        return rows.get(0)[1] + hotAccountService.getShardBalance(userId);
+    }
+    
     public CheckinStatusResponse getCheckinStatus(Long userId) {
         LocalDate today = LocalDate.now();
         
-        DailyTaskLog taskLog = dailyTaskLogRepository.findByUserIdAndDate(userId, today)
-                .orElse(null);
-        
-        boolean checkedInToday = taskLog != null && taskLog.getIsCheckedIn();
-        LocalDate lastCheckinDate = checkedInToday ? today : null;
+        // 前端每次加载页面都会轮询，今日状态与最近签到日都读内存，最近签到日只在首次读取时回库
+        boolean checkedInToday = checkinBitmap.isCheckedIn(userId, today);
+        LocalDate lastCheckinDate = checkedInToday
+                ? today : checkinBitmap.getLastCheckinDate(userId, checkinHistoryService::getLastCheckinDate);
         
         CheckinStatusResponse response = new CheckinStatusResponse();
         response.setCheckedInToday(checkedInToday);
@@ -0,0 +1,421 @@
+package com.workshop.service;
+
+import com.workshop.dto.task.DailyTaskProgressResponse;
+import com.workshop.entity.Transaction;
+import com.workshop.event.TaskActionEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// 每日任务进度：行为事件只更新分段加锁的内存计数并在本地判断上限，
+// 定时把计数增量批量写入 daily_task_logs，按实际写入的增量发放闪电并记流水
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DailyTaskEngine {
+    
+    private static final int LOGIN_REWARD = 10;
+    private static final int VIEW_REWARD = 1;
+    private static final int VIEW_LIMIT = 5;
+    private static final int LIKE_REWARD = 2;
+    private static final int LIKE_LIMIT = 5;
+    private static final int DONATE_REWARD = 5;
+    private static final int DONATE_LIMIT = 5;
+    
+    private static final int BATCH_SIZE = 500;
+    
+    private static final String LOAD_SQL =
+            "SELECT view_count, like_count, donate_drops, login_rewarded FROM daily_task_logs " +
+            "WHERE user_id = ? AND date = ?";
+    
+    private static final String ENSURE_ROWS_SQL =
+            "INSERT INTO daily_task_logs (user_id, date, view_count, like_count, donate_drops, is_checked_in, login_rewarded) " +
+            "SELECT user_id, date, 0, 0, 0, false, false " +
+            "FROM unnest(CAST(? AS bigint[]), CAST(? AS date[])) AS d(user_id, date) " +
+            "ON CONFLICT (user_id, date) DO NOTHING";
+    
+    // 先锁住并读出旧值，上限在数据库侧再截断一次，多节点同时写入时奖励也不会超过上限
+    private static final String APPLY_SQL =
+            "UPDATE daily_task_logs t SET view_count = LEAST(?, o.view_count + d.views), " +
+            "like_count = LEAST(?, o.like_count + d.likes), " +
+            "donate_drops = LEAST(?, o.donate_drops + d.donates), " +
+            "login_rewarded = o.login_rewarded OR d.login " +
+            "FROM unnest(CAST(? AS bigint[]), CAST(? AS date[]), CAST(? AS int[]), CAST(? AS int[]), " +
+            "CAST(? AS int[]), CAST(? AS boolean[])) AS d(user_id, date, views, likes, donates, login) " +
+            "JOIN LATERAL (SELECT id, view_count, like_count, donate_drops, login_rewarded FROM daily_task_logs " +
+            "WHERE user_id = d.user_id AND date = d.date FOR UPDATE) o ON true " +
+            "WHERE t.id = o.id " +
+            "RETURNING t.user_id, t.date, t.view_count, t.like_count, t.donate_drops, t.login_rewarded, " +
+            "t.view_count - o.view_count AS views, t.like_count - o.like_count AS likes, " +
+            "t.donate_drops - o.donate_drops AS donates, t.login_rewarded AND NOT o.login_rewarded AS login";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionService transactionService;
+    private final LedgerAppender ledgerAppender;
+    
+    @Value("${daily-task.stripes:64}")
+    private int stripeCount;
+    
+    private Stripe[] stripes;
+    
+    private final LongAdder acceptedEvents = new LongAdder();
+    private final LongAdder cappedEvents = new LongAdder();
+    private final LongAdder flushedRows = new LongAdder();
+    private final LongAdder rewardedLightning = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    
+    @PostConstruct
+    public void init() {
+        stripes = new Stripe[Math.max(1, stripeCount)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+    
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAction(TaskActionEvent event) {
+        LocalDate today = LocalDate.now();
+        Stripe stripe = stripeFor(event.getUserId());
+        Progress progress = load(stripe, event.getUserId(), today);
+        boolean accepted;
+        synchronized (stripe) {
+            accepted = progress.apply(event);
+            if (accepted) {
+                stripe.dirty.add(progress.key);
+            }
+        }
+        if (accepted) {
+            acceptedEvents.increment();
+        } else {
+            cappedEvents.increment();
+        }
+    }
+    
+    public DailyTaskProgressResponse getProgress(Long userId) {
+        LocalDate today = LocalDate.now();
+        Stripe stripe = stripeFor(userId);
+        Progress progress = load(stripe, userId, today);
+        synchronized (stripe) {
+            return new DailyTaskProgressResponse(today,
+                    progress.committedLogin || progress.pendingLogin,
+                    progress.committedViews + progress.pendingViews, VIEW_LIMIT,
+                    progress.committedLikes + progress.pendingLikes, LIKE_LIMIT,
+                    progress.committedDonates + progress.pendingDonates, DONATE_LIMIT);
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${daily-task.flush-interval:2000}")
+    public synchronized void flush() {
+        LocalDate today = LocalDate.now();
+        List<Delta> deltas = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (Key key : stripe.dirty) {
+                    Progress progress = stripe.entries.get(key);
+                    if (progress != null && progress.hasPending()) {
+                        deltas.add(progress.takePending());
+                    }
+                }
+                stripe.dirty.clear();
+                // 过期的日期没有待写增量后即可丢弃
+                stripe.entries.values().removeIf(p -> p.key.date.isBefore(today) && !p.hasPending());
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        // 固定加锁顺序，避免与其它节点的批次互相等待
+        deltas.sort(Comparator.comparing((Delta d) -> d.key.userId).thenComparing(d -> d.key.date));
+        for (int from = 0; from < deltas.size(); from += BATCH_SIZE) {
+            List<Delta> batch = deltas.subList(from, Math.min(deltas.size(), from + BATCH_SIZE));
+            try {
+                writeBatch(batch);
+                flushedRows.add(batch.size());
+            } catch (Exception e) {
+                flushFailures.increment();
+                log.error("Failed to flush {} daily task updates, will retry", batch.size(), e);
+                batch.forEach(this::restore);
+            }
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+    
+    public Map<String, Object> getStats() {
+        long tracked = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                tracked += stripe.entries.size();
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("stripes", stripes.length);
+        stats.put("trackedUserDays", tracked);
+        stats.put("acceptedEvents", acceptedEvents.sum());
+        stats.put("cappedEvents", cappedEvents.sum());
+        stats.put("flushedRows", flushedRows.sum());
+        stats.put("rewardedLightning", rewardedLightning.sum());
+        stats.put("flushFailures", flushFailures.sum());
+        return stats;
+    }
+    
+    private void writeBatch(List<Delta> batch) {
+        StringJoiner userIds = new StringJoiner(",", "{", "}");
+        StringJoiner dates = new StringJoiner(",", "{", "}");
+        StringJoiner views = new StringJoiner(",", "{", "}");
+        StringJoiner likes = new StringJoiner(",", "{", "}");
+        StringJoiner donates = new StringJoiner(",", "{", "}");
+        StringJoiner logins = new StringJoiner(",", "{", "}");
+        for (Delta delta : batch) {
+            userIds.add(delta.key.userId.toString());
+            dates.add(delta.key.date.toString());
+            views.add(Integer.toString(delta.views));
+            likes.add(Integer.toString(delta.likes));
+            donates.add(Integer.toString(delta.donates));
+            logins.add(Boolean.toString(delta.login));
+        }
+        
+        List<Applied> applied = transactionTemplate.execute(status -> {
+            jdbcTemplate.update(ENSURE_ROWS_SQL, userIds.toString(), dates.toString());
+            List<Applied> rows = jdbcTemplate.query(APPLY_SQL, (rs, rowNum) -> new Applied(
+                    new Key(rs.getLong("user_id"), rs.getDate("date").toLocalDate()),
+                    rs.getInt("view_count"), rs.getInt("like_count"), rs.getInt("donate_drops"),
+                    rs.getBoolean("login_rewarded"), rs.getInt("views"), rs.getInt("likes"),
+                    rs.getInt("donates"), rs.getBoolean("login")),
+                    VIEW_LIMIT, LIKE_LIMIT, DONATE_LIMIT, userIds.toString(), dates.toString(), views.toString(),
+                    likes.toString(), donates.toString(), logins.toString());
+            
+            Map<Long, long[]> credits = new TreeMap<>();
+            for (Applied row : rows) {
+                long lightning = row.lightning();
+                if (lightning > 0) {
+                    credits.computeIfAbsent(row.key.userId, k -> new long[2])[1] += lightning;
+                }
+            }
+            Set<Long> credited = transactionService.applyCredits(credits);
+            for (Applied row : rows) {
+                if (credited.contains(row.key.userId)) {
+                    appendLedger(row);
+                }
+            }
+            return rows;
+        });
+        
+        long total = 0;
+        for (Applied row : applied) {
+            Stripe stripe = stripeFor(row.key.userId);
+            synchronized (stripe) {
+                Progress progress = stripe.entries.get(row.key);
+                if (progress != null) {
+                    progress.commit(row);
+                }
+            }
+            total += row.lightning();
+        }
+        rewardedLightning.add(total);
+    }
+    
+    private void appendLedger(Applied row) {
+        Long userId = row.key.userId;
+        if (row.login) {
+            ledgerAppender.append(userId, Transaction.TransactionType.TASK_LOGIN, 0, LOGIN_REWARD, null, "每日登录奖励");
+        }
+        if (row.views > 0) {
+            ledgerAppender.append(userId, Transaction.TransactionType.TASK_VIEW, 0, row.views * VIEW_REWARD,
+                    null, "每日浏览地图奖励");
+        }
+        if (row.likes > 0) {
+            ledgerAppender.append(userId, Transaction.TransactionType.TASK_LIKE, 0, row.likes * LIKE_REWARD,
+                    null, "每日点赞奖励");
+        }
+        if (row.donates > 0) {
+            ledgerAppender.append(userId, Transaction.TransactionType.TASK_DONATE, 0, row.donates * DONATE_REWARD,
+                    null, "每日打赏奖励");
+        }
+    }
+    
+    private void restore(Delta delta) {
+        Stripe stripe = stripeFor(delta.key.userId);
+        synchronized (stripe) {
+            Progress progress = stripe.entries.get(delta.key);
+            if (progress != null) {
+                progress.restore(delta);
+                stripe.dirty.add(delta.key);
+            }
+        }
+    }
+    
+    // 首次访问某用户当天的进度时从数据库读出已提交的计数，查询不持有分段锁
+    private Progress load(Stripe stripe, Long userId, LocalDate date) {
+        Key key = new Key(userId, date);
+        synchronized (stripe) {
+            Progress progress = stripe.entries.get(key);
+            if (progress != null) {
+                return progress;
+            }
+        }
+        List<int[]> rows = jdbcTemplate.query(LOAD_SQL, (rs, rowNum) -> new int[]{
+                rs.getInt("view_count"), rs.getInt("like_count"), rs.getInt("donate_drops"),
+                rs.getBoolean("login_rewarded") ? 1 : 0}, userId, Date.valueOf(date));
+        synchronized (stripe) {
+            return stripe.entries.computeIfAbsent(key, k -> {
+                Progress progress = new Progress(k);
+                if (!rows.isEmpty()) {
+                    int[] row = rows.get(0);
+                    progress.committedViews = row[0];
+                    progress.committedLikes = row[1];
+                    progress.committedDonates = row[2];
+                    progress.committedLogin = row[3] == 1;
+                }
+                return progress;
+            });
+        }
+    }
+    
+    private Stripe stripeFor(Long userId) {
+        long h = userId * 0x9E3779B97F4A7C15L;
+        return stripes[(int) Math.floorMod(h ^ (h >>> 32), (long) stripes.length)];
+    }
+    
+    private record Key(Long userId, LocalDate date) {
+    }
+    
+    private static final class Stripe {
+        private final Map<Key, Progress> entries = new HashMap<>();
+        private final Set<Key> dirty = new HashSet<>();
+    }
+    
+    private record Delta(Key key, int views, int likes, int donates, boolean login) {
+    }
+    
+    private record Applied(Key key, int viewCount, int likeCount, int donateDrops, boolean loginRewarded,
+                           int views, int likes, int donates, boolean login) {
+        
+        long lightning() {
+            return (login ? LOGIN_REWARD : 0) + (long) views * VIEW_REWARD + (long) likes * LIKE_REWARD
+                    + (long) donates * DONATE_REWARD;
+        }
+    }
+    
+    // 单个用户单日的进度，已提交部分来自数据库，待写部分为尚未刷出的增量；由所属分段的锁保护
+    private static final class Progress {
+        
+        private final Key key;
+        private int committedViews;
+        private int committedLikes;
+        private int committedDonates;
+        private boolean committedLogin;
+        private int pendingViews;
+        private int pendingLikes;
+        private int pendingDonates;
+        private boolean pendingLogin;
+        private final Set<Long> viewedMaps = new HashSet<>();
+        private final Set<Long> likedMaps = new HashSet<>();
+        
+        private Progress(Key key) {
+            this.key = key;
+        }
+        
+        // 超出上限或重复的地图返回 false
+        private boolean apply(TaskActionEvent event) {
+            switch (event.getAction()) {
+                case LOGIN -> {
+                    if (committedLogin || pendingLogin) {
+                        return false;
+                    }
+                    pendingLogin = true;
+                    return true;
+                }
+                case VIEW -> {
+                    if (committedViews + pendingViews >= VIEW_LIMIT || !viewedMaps.add(event.getTargetId())) {
+                        return false;
+                    }
+                    pendingViews++;
+                    return true;
+                }
+                case LIKE -> {
+                    if (committedLikes + pendingLikes >= LIKE_LIMIT || !likedMaps.add(event.getTargetId())) {
+                        return false;
+                    }
+                    pendingLikes++;
+                    return true;
+                }
+                case DONATE -> {
+                    int room = DONATE_LIMIT - committedDonates - pendingDonates;
+                    int counted = Math.min(room, event.getAmount());
+                    if (counted <= 0) {
+                        return false;
+                    }
+                    pendingDonates += counted;
+                    return true;
+                }
+                default -> {
+                    return false;
+                }
+            }
+        }
+        
+        private boolean hasPending() {
+            return pendingViews > 0 || pendingLikes > 0 || pendingDonates > 0 || pendingLogin;
+        }
+        
+        private Delta takePending() {
+            Delta delta = new Delta(key, pendingViews, pendingLikes, pendingDonates, pendingLogin);
+            committedViews += pendingViews;
+            committedLikes += pendingLikes;
+            committedDonates += pendingDonates;
+            committedLogin |= pendingLogin;
+            pendingViews = 0;
+            pendingLikes = 0;
+            pendingDonates = 0;
+            pendingLogin = false;
+            return delta;
+        }
+        
+        private void restore(Delta delta) {
+            committedViews -= delta.views;
+            committedLikes -= delta.likes;
+            committedDonates -= delta.donates;
+            if (delta.login) {
+                committedLogin = false;
+            }
+            pendingViews += delta.views;
+            pendingLikes += delta.likes;
+            pendingDonates += delta.donates;
+            pendingLogin |= delta.login;
+        }
+        
+        // 以数据库返回的计数为准，其它节点写入的部分也会反映到本地
+        private void commit(Applied row) {
+            committedViews = row.viewCount;
+            committedLikes = row.likeCount;
+            committedDonates = row.donateDrops;
+            committedLogin = row.loginRewarded;
+        }
+    }
+}
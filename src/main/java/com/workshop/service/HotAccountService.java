@@ -0,0 +1,152 @@
+package com.workshop.service;
+
+import com.workshop.exception.BusinessException;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// 热点账户分片余额：标记为热点的账户，收入分散写入 balance_shards 的 N 个槽位，避免所有入账争抢同一行 users；
+// 扣款前先把槽位合并回 users.drops 再做条件扣减，定时任务周期性合并所有槽位
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class HotAccountService {
+    
+    private static final String CREDIT_SLOT_SQL =
+            "INSERT INTO balance_shards (user_id, slot, drops) VALUES (?, ?, ?) " +
+            "ON CONFLICT (user_id, slot) DO UPDATE SET drops = balance_shards.drops + EXCLUDED.drops";
+    
+    // 数据修改型 CTE：删除的槽位与加回 users 的金额在同一语句内完成
+    // 与转账、批量合并一致先锁 users 行再锁槽位：DELETE 的条件引用 locked，行锁在删除槽位之前取得
+    private static final String FOLD_USER_SQL =
+            "WITH locked AS (SELECT id FROM users WHERE id = ? FOR UPDATE), " +
+            "folded AS (DELETE FROM balance_shards WHERE user_id = (SELECT id FROM locked) RETURNING drops) " +
+            "UPDATE users SET drops = drops + (SELECT COALESCE(SUM(drops), 0) FROM folded) WHERE id = ?";
+    
+    private static final int FOLD_BATCH_SIZE = 200;
+    
+    private static final String SHARD_USERS_SQL =
+            "SELECT DISTINCT user_id FROM balance_shards ORDER BY user_id";
+    
+    // 定时合并不等待任何锁：正在转账的账户 (users 行或槽位被业务事务持有) 直接跳过，留到下一轮，
+    // 后台任务不会进入死锁环，也就不会导致数据库中止用户事务。按 user_id 顺序分批加锁
+    private static final String FOLD_BATCH_SQL =
+            "WITH locked_users AS (SELECT id FROM users WHERE id = ANY(CAST(? AS bigint[])) " +
+            "ORDER BY id FOR UPDATE SKIP LOCKED), " +
+            "locked_shards AS (SELECT s.user_id, s.slot FROM balance_shards s JOIN locked_users l ON s.user_id = l.id " +
+            "ORDER BY s.user_id, s.slot FOR UPDATE OF s SKIP LOCKED), " +
+            "folded AS (DELETE FROM balance_shards s USING locked_shards k " +
+            "WHERE s.user_id = k.user_id AND s.slot = k.slot RETURNING s.user_id, s.drops), " +
+            "totals AS (SELECT user_id, SUM(drops) AS drops FROM folded GROUP BY user_id) " +
+            "UPDATE users u SET drops = u.drops + t.drops FROM totals t WHERE u.id = t.user_id";
+    
+    private static final String SHARD_BALANCE_SQL =
+            "SELECT COALESCE(SUM(drops), 0) FROM balance_shards WHERE user_id = ?";
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    @Value("${hot-account.slots:8}")
+    private int slots;
+    
+    private volatile Set<Long> hotAccounts = Set.of();
+    
+    private final LongAdder shardedCredits = new LongAdder();
+    private final LongAdder userFolds = new LongAdder();
+    private final LongAdder foldedRows = new LongAdder();
+    
+    @PostConstruct
+    public void init() {
+        reload();
+    }
+    
+    public boolean isHot(Long userId) {
+        return hotAccounts.contains(userId);
+    }
+    
+    // 随机选择槽位，同一账户的并发入账落在不同行上
+    public void credit(Long userId, int amount) {
+        int slot = ThreadLocalRandom.current().nextInt(Math.max(1, slots));
+        jdbcTemplate.update(CREDIT_SLOT_SQL, userId, slot, amount);
+        shardedCredits.increment();
+    }
+    
+    // 在调用方事务内把该账户的槽位合并回 users，之后对 users.drops 的条件扣减即为准确余额
+    public void fold(Long userId) {
+        jdbcTemplate.update(FOLD_USER_SQL, userId, userId);
+        userFolds.increment();
+    }
+    
+    public long getShardBalance(Long userId) {
+        if (!isHot(userId)) {
+            return 0;
+        }
+        Long balance = jdbcTemplate.queryForObject(SHARD_BALANCE_SQL, Long.class, userId);
+        return balance != null ? balance : 0;
+    }
+    
+    @Transactional
+    public void setHot(Long userId, boolean hot) {
+        int updated = jdbcTemplate.update("UPDATE users SET hot_account = ? WHERE id = ?", hot, userId);
+        if (updated == 0) {
+            throw new BusinessException("用户不存在");
+        }
+        if (!hot) {
+            fold(userId);
+        }
+        Set<Long> next = new HashSet<>(hotAccounts);
+        if (hot) {
+            next.add(userId);
+        } else {
+            next.remove(userId);
+        }
+        hotAccounts = Set.copyOf(next);
+    }
+    
+    @Scheduled(fixedDelayString = "${hot-account.fold-interval:5000}")
+    public void foldAll() {
+        try {
+            List<Long> userIds = jdbcTemplate.queryForList(SHARD_USERS_SQL, Long.class);
+            for (int from = 0; from < userIds.size(); from += FOLD_BATCH_SIZE) {
+                StringJoiner batch = new StringJoiner(",", "{", "}");
+                for (Long userId : userIds.subList(from, Math.min(from + FOLD_BATCH_SIZE, userIds.size()))) {
+                    batch.add(userId.toString());
+                }
+                foldedRows.add(jdbcTemplate.update(FOLD_BATCH_SQL, batch.toString()));
+            }
+        } catch (Exception e) {
+            log.warn("Failed to fold hot account balance shards", e);
+        }
+    }
+    
+    // 其它节点设置的热点标记通过定时重新加载同步
+    @Scheduled(fixedDelayString = "${hot-account.refresh-interval:10000}")
+    public void reload() {
+        List<Long> ids = jdbcTemplate.queryForList("SELECT id FROM users WHERE hot_account", Long.class);
+        hotAccounts = Set.copyOf(ids);
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hotAccounts", hotAccounts.size());
+        stats.put("slots", slots);
+        stats.put("unfoldedShardRows", jdbcTemplate.queryForObject("SELECT COUNT(*) FROM balance_shards", Long.class));
+        stats.put("shardedCredits", shardedCredits.sum());
+        stats.put("userFolds", userFolds.sum());
+        stats.put("foldedAccountsByTimer", foldedRows.sum());
+        return stats;
+    }
+}
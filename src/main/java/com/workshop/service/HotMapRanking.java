@@ -0,0 +1,232 @@
+package com.workshop.service;
+
+import com.workshop.dto.map.HotMapEntry;
+import com.workshop.dto.map.HotMapsResponse;
+import com.workshop.dto.map.MapSummaryResponse;
+import com.workshop.event.MapInteractionEvent;
+import com.workshop.repository.MapRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// 热门地图排行：每张地图保存 ln(Σ 权重 × e^(λ·(t - 基准时刻)))，新互动用 log-sum-exp 累加。
+// 所有地图共享同一个衰减因子 e^(-λ·(now - 基准时刻))，按对数分排序即等于按当前衰减后热度排序，
+// 分数只增不减，无需定时整体重算。前 K 名保存在跳表中，定时生成不可变快照供读取，读路径不加锁
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class HotMapRanking {
+    
+    private static final long EPOCH_SECONDS = LocalDateTime.of(2025, 1, 1, 0, 0)
+            .atZone(ZoneId.systemDefault()).toEpochSecond();
+    
+    // 衰减后热度低于该值且不在前 K 名的地图不再跟踪
+    private static final double PRUNE_SCORE = 0.01;
+    
+    private static final String SEED_SQL =
+            "SELECT id, views, created_at FROM maps WHERE status = 'APPROVED' AND created_at > ?";
+    
+    private static final Comparator<Ranked> ORDER = Comparator.comparingDouble(Ranked::logScore).reversed()
+            .thenComparingLong(Ranked::mapId);
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final MapRepository mapRepository;
+    
+    @Value("${hot-maps.half-life-hours:24}")
+    private double halfLifeHours;
+    
+    @Value("${hot-maps.top-k:200}")
+    private int topK;
+    
+    @Value("${hot-maps.weights.view:1}")
+    private double viewWeight;
+    
+    @Value("${hot-maps.weights.like:5}")
+    private double likeWeight;
+    
+    @Value("${hot-maps.weights.download:10}")
+    private double downloadWeight;
+    
+    // 每个水滴的权重
+    @Value("${hot-maps.weights.donate:1}")
+    private double donateWeight;
+    
+    private final ConcurrentHashMap<Long, Double> logScores = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Ranked> top = new ConcurrentSkipListSet<>(ORDER);
+    // 写入都在 synchronized (topEntries) 内，快速路径无锁读取
+    private final ConcurrentHashMap<Long, Ranked> topEntries = new ConcurrentHashMap<>();
+    
+    // 前 K 名已满时为第 K 名的分数，否则为负无穷；只在锁内更新
+    private volatile double admissionScore = Double.NEGATIVE_INFINITY;
+    
+    private volatile HotMapsResponse snapshot = new HotMapsResponse(List.of(), null);
+    
+    private final LongAdder events = new LongAdder();
+    private final LongAdder topChanges = new LongAdder();
+    private volatile long lastPublishMicros;
+    private volatile long lastPruned;
+    
+    // 重启后以浏览数为先验，按发布时间衰减，只取近若干个半衰期内发布的地图
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            LocalDateTime since = LocalDateTime.now().minusMinutes((long) (halfLifeHours * 60 * 10));
+            jdbcTemplate.query(SEED_SQL, rs -> {
+                long seconds = rs.getTimestamp("created_at").toLocalDateTime()
+                        .atZone(ZoneId.systemDefault()).toEpochSecond();
+                add(rs.getLong("id"), 1 + rs.getInt("views"), seconds);
+            }, Timestamp.valueOf(since));
+            publish();
+            log.info("Hot map ranking seeded with {} maps", logScores.size());
+        } catch (Exception e) {
+            log.error("Failed to seed hot map ranking", e);
+        }
+    }
+    
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInteraction(MapInteractionEvent event) {
+        double weight = switch (event.getKind()) {
+            case VIEW -> viewWeight;
+            case LIKE -> likeWeight;
+            case DOWNLOAD -> downloadWeight;
+            case DONATE -> donateWeight * Math.max(0, event.getAmount());
+        };
+        if (weight <= 0) {
+            return;
+        }
+        add(event.getMapId(), weight, System.currentTimeMillis() / 1000);
+        events.increment();
+    }
+    
+    public HotMapsResponse getHotMaps(int size) {
+        HotMapsResponse current = snapshot;
+        int limit = Math.max(0, Math.min(size, current.getItems().size()));
+        if (limit == current.getItems().size()) {
+            return current;
+        }
+        return new HotMapsResponse(current.getItems().subList(0, limit), current.getGeneratedAt());
+    }
+    
+    // 从跳表读出前 K 名并补全摘要，未通过审核或已删除的地图跳过
+    @Scheduled(fixedDelayString = "${hot-maps.publish-interval:5000}")
+    public void publish() {
+        long start = System.nanoTime();
+        List<Ranked> ranked = new ArrayList<>(top);
+        if (ranked.isEmpty()) {
+            snapshot = new HotMapsResponse(List.of(), LocalDateTime.now());
+            return;
+        }
+        Map<Long, MapSummaryResponse> summaries = mapRepository.findSummaries(
+                        ranked.stream().map(Ranked::mapId).toList(), com.workshop.entity.Map.MapStatus.APPROVED)
+                .stream().collect(Collectors.toMap(MapSummaryResponse::getId, Function.identity()));
+        double decay = decayExponent(System.currentTimeMillis() / 1000);
+        List<HotMapEntry> items = new ArrayList<>(summaries.size());
+        for (Ranked entry : ranked) {
+            // 遍历跳表时同一地图可能新旧两条同时可见，remove 保证只取分数较高的那条
+            MapSummaryResponse summary = summaries.remove(entry.mapId);
+            if (summary != null) {
+                items.add(new HotMapEntry(items.size() + 1, Math.exp(entry.logScore - decay), summary));
+            }
+        }
+        snapshot = new HotMapsResponse(List.copyOf(items), LocalDateTime.now());
+        lastPublishMicros = (System.nanoTime() - start) / 1000;
+    }
+    
+    @Scheduled(fixedDelayString = "${hot-maps.prune-interval:600000}",
+            initialDelayString = "${hot-maps.prune-interval:600000}")
+    public void prune() {
+        double threshold = Math.log(PRUNE_SCORE) + decayExponent(System.currentTimeMillis() / 1000);
+        long before = logScores.size();
+        synchronized (topEntries) {
+            logScores.entrySet().removeIf(e -> e.getValue() < threshold && !topEntries.containsKey(e.getKey()));
+        }
+        lastPruned = before - logScores.size();
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("trackedMaps", logScores.size());
+        stats.put("topSize", top.size());
+        stats.put("topK", topK);
+        stats.put("halfLifeHours", halfLifeHours);
+        stats.put("events", events.sum());
+        stats.put("topChanges", topChanges.sum());
+        stats.put("snapshotSize", snapshot.getItems().size());
+        stats.put("generatedAt", snapshot.getGeneratedAt());
+        stats.put("lastPublishMicros", lastPublishMicros);
+        stats.put("lastPruned", lastPruned);
+        return stats;
+    }
+    
+    private void add(long mapId, double weight, long epochSeconds) {
+        double term = Math.log(weight) + decayExponent(epochSeconds);
+        double score = logScores.merge(mapId, term, HotMapRanking::logAddExp);
+        offer(mapId, score);
+    }
+    
+    // 分数单调递增：已在前 K 名的更新位置，不在的只需与第 K 名比较。
+    // 绝大多数事件来自前 K 名以外且分数不够，先无锁比较门槛直接返回；门槛只升不降，
+    // 先查成员再读门槛，并发加入的同一地图要么已在 topEntries 中可见，要么已被更高的门槛淘汰
+    private void offer(long mapId, double score) {
+        if (!topEntries.containsKey(mapId) && score <= admissionScore) {
+            return;
+        }
+        synchronized (topEntries) {
+            Double latest = logScores.get(mapId);
+            if (latest != null && latest > score) {
+                score = latest;
+            }
+            Ranked existing = topEntries.get(mapId);
+            if (existing != null) {
+                if (existing.logScore >= score) {
+                    return;
+                }
+                top.remove(existing);
+            } else if (top.size() >= topK && score <= top.last().logScore) {
+                return;
+            }
+            Ranked entry = new Ranked(mapId, score);
+            top.add(entry);
+            topEntries.put(mapId, entry);
+            if (top.size() > topK) {
+                Ranked evicted = top.pollLast();
+                topEntries.remove(evicted.mapId);
+            }
+            admissionScore = top.size() >= topK ? top.last().logScore : Double.NEGATIVE_INFINITY;
+            topChanges.increment();
+        }
+    }
+    
+    // λ·(t - 基准时刻)，λ = ln2 / 半衰期
+    private double decayExponent(long epochSeconds) {
+        return Math.log(2) * (epochSeconds - EPOCH_SECONDS) / (halfLifeHours * 3600);
+    }
+    
+    private static double logAddExp(double a, double b) {
+        double max = Math.max(a, b);
+        return max + Math.log1p(Math.exp(Math.min(a, b) - max));
+    }
+    
+    private record Ranked(long mapId, double logScore) {
+    }
+}
@@ -0,0 +1,76 @@
+package com.workshop.service;
+
+import com.workshop.util.InviteCodeGenerator;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+// 从 invite_code_seq 取序号再经 InviteCodeGenerator 置换得到邀请码，无需 existsByInviteCode 探测
+@Service
+@RequiredArgsConstructor
+public class InviteCodeAllocator {
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    @Value("${invite-code.secret}")
+    private String secret;
+    
+    // 大于 1 时按块预取序号，块内分配不访问数据库
+    @Value("${invite-code.block-size:1}")
+    private int blockSize;
+    
+    private InviteCodeGenerator generator;
+    
+    private final ArrayDeque<Long> preallocated = new ArrayDeque<>();
+    
+    @PostConstruct
+    public void init() {
+        generator = new InviteCodeGenerator(secret);
+    }
+    
+    public String allocate() {
+        return generator.encode(nextSequence());
+    }
+    
+    // 块模式下余量不足四分之一时后台补充，避免注册请求同步等待
+    @Scheduled(fixedDelayString = "${invite-code.prefetch-interval:1000}")
+    public void prefetch() {
+        if (blockSize <= 1) {
+            return;
+        }
+        synchronized (preallocated) {
+            if (preallocated.size() >= blockSize / 4) {
+                return;
+            }
+        }
+        List<Long> block = fetchBlock(blockSize);
+        synchronized (preallocated) {
+            preallocated.addAll(block);
+        }
+    }
+    
+    private long nextSequence() {
+        synchronized (preallocated) {
+            Long next = preallocated.poll();
+            if (next != null) {
+                return next;
+            }
+        }
+        List<Long> block = fetchBlock(Math.max(1, blockSize));
+        synchronized (preallocated) {
+            preallocated.addAll(block.subList(1, block.size()));
+        }
+        return block.get(0);
+    }
+    
+    private List<Long> fetchBlock(int size) {
+        return jdbcTemplate.queryForList(
+                "SELECT nextval('invite_code_seq') FROM generate_series(1, ?)", Long.class, size);
+    }
+}
@@ -0,0 +1,75 @@
+package com.workshop.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 最后登录时间先写入内存，同一用户多次登录只保留最新时间，定时批量刷回 users 表
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LastLoginTracker {
+    
+    private static final int BATCH_SIZE = 500;
+    
+    private static final String UPDATE_SQL =
+            "UPDATE users SET last_login_at = ? WHERE id = ? AND (last_login_at IS NULL OR last_login_at < ?)";
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    private final ConcurrentHashMap<Long, LocalDateTime> pending = new ConcurrentHashMap<>();
+    
+    public void record(Long userId, LocalDateTime loginAt) {
+        pending.merge(userId, loginAt, (a, b) -> a.isAfter(b) ? a : b);
+    }
+    
+    @Scheduled(fixedDelayString = "${auth.last-login-flush-interval:5000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        
+        List<Long> userIds = new ArrayList<>(pending.keySet());
+        List<Object[]> batch = new ArrayList<>(Math.min(userIds.size(), BATCH_SIZE));
+        for (Long userId : userIds) {
+            LocalDateTime loginAt = pending.remove(userId);
+            if (loginAt == null) {
+                continue;
+            }
+            Timestamp ts = Timestamp.valueOf(loginAt);
+            batch.add(new Object[]{ts, userId, ts});
+            if (batch.size() >= BATCH_SIZE) {
+                writeBatch(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(batch);
+        }
+    }
+    
+    private void writeBatch(List<Object[]> batch) {
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_SQL, batch);
+        } catch (Exception e) {
+            log.error("Failed to flush {} last login updates, will retry", batch.size(), e);
+            for (Object[] row : batch) {
+                record((Long) row[1], ((Timestamp) row[0]).toLocalDateTime());
+            }
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+}
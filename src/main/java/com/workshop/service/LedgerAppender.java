@@ -0,0 +1,250 @@
+package com.workshop.service;
+
+import com.workshop.entity.Transaction;
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// 流水写入器：同一事务内的流水先缓存，提交前合并为一条多行 INSERT，大批量时改走 COPY
+@Component
+@RequiredArgsConstructor
+public class LedgerAppender {
+    
+    // 与 Transaction 实体的 @SequenceGenerator 保持一致 (pooled：nextval 返回块的上界)
+    private static final String SEQUENCE_NAME = "transactions_ledger_seq";
+    public static final int ID_ALLOCATION_SIZE = 50;
+    
+    private static final String INSERT_PREFIX =
+            "INSERT INTO transactions (id, user_id, type, change_drops, change_lightning, related_id, description, created_at) VALUES ";
+    private static final String INSERT_ROW = "(?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final int COLUMNS = 8;
+    
+    // PostgreSQL 单条语句最多 65535 个参数
+    private static final int MAX_ROWS_PER_STATEMENT = 500;
+    
+    private static final String COPY_SQL =
+            "COPY transactions (id, user_id, type, change_drops, change_lightning, related_id, description, created_at) " +
+            "FROM STDIN WITH (FORMAT csv)";
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    // 单次写入达到该行数时使用 COPY
+    @Value("${ledger.copy-threshold:1000}")
+    private int copyThreshold;
+    
+    // 预取的号段超过该时长未用完即丢弃，保证较小的 id 不会在很久之后才提交 (对账高水位依赖这一点)
+    private static final long ID_BLOCK_MAX_AGE_NANOS = 60_000_000_000L;
+    
+    private final ArrayDeque<Long> preallocatedIds = new ArrayDeque<>();
+    private long preallocatedAt;
+    
+    private final LongAdder appendedEntries = new LongAdder();
+    private final LongAdder insertStatements = new LongAdder();
+    private final LongAdder copyOperations = new LongAdder();
+    private final LongAdder copiedRows = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    
+    public void append(Long userId, Transaction.TransactionType type, int changeDrops, int changeLightning,
+                       Long relatedId, String description) {
+        Transaction entry = new Transaction();
+        entry.setUserId(userId);
+        entry.setType(type);
+        entry.setChangeDrops(changeDrops);
+        entry.setChangeLightning(changeLightning);
+        entry.setRelatedId(relatedId);
+        entry.setDescription(description);
+        entry.setCreatedAt(LocalDateTime.now());
+        append(entry);
+    }
+    
+    // 有事务时挂到事务上，提交前统一写入；无事务时立即写入
+    public void append(Transaction entry) {
+        if (entry.getCreatedAt() == null) {
+            entry.setCreatedAt(LocalDateTime.now());
+        }
+        appendedEntries.increment();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            write(List.of(entry));
+            return;
+        }
+        PendingEntries pending = (PendingEntries) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new PendingEntries();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        pending.entries.add(entry);
+    }
+    
+    // 批量写入，调用方已自行组好一批流水 (如批量发放奖励)
+    public void appendAll(List<Transaction> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        for (Transaction entry : entries) {
+            if (entry.getCreatedAt() == null) {
+                entry.setCreatedAt(LocalDateTime.now());
+            }
+        }
+        appendedEntries.add(entries.size());
+        write(entries);
+    }
+    
+    public Map<String, Object> getStats() {
+        long flushCount = flushes.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("appendedEntries", appendedEntries.sum());
+        stats.put("flushes", flushCount);
+        stats.put("insertStatements", insertStatements.sum());
+        stats.put("copyOperations", copyOperations.sum());
+        stats.put("copiedRows", copiedRows.sum());
+        stats.put("avgEntriesPerFlush", flushCount == 0 ? 0 : (double) appendedEntries.sum() / flushCount);
+        stats.put("avgFlushMillis", flushCount == 0 ? 0 : flushNanos.sum() / 1_000_000.0 / flushCount);
+        synchronized (preallocatedIds) {
+            stats.put("preallocatedIds", preallocatedIds.size());
+        }
+        return stats;
+    }
+    
+    private void write(List<Transaction> entries) {
+        long start = System.nanoTime();
+        long[] ids = allocateIds(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            entries.get(i).setId(ids[i]);
+        }
+        if (entries.size() >= copyThreshold) {
+            copy(entries);
+        } else {
+            for (int from = 0; from < entries.size(); from += MAX_ROWS_PER_STATEMENT) {
+                insert(entries.subList(from, Math.min(entries.size(), from + MAX_ROWS_PER_STATEMENT)));
+            }
+        }
+        flushes.increment();
+        flushNanos.add(System.nanoTime() - start);
+    }
+    
+    private void insert(List<Transaction> rows) {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + rows.size() * (INSERT_ROW.length() + 2));
+        sql.append(INSERT_PREFIX);
+        Object[] args = new Object[rows.size() * COLUMNS];
+        int i = 0;
+        for (Transaction row : rows) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(INSERT_ROW);
+            args[i++] = row.getId();
+            args[i++] = row.getUserId();
+            args[i++] = row.getType().name();
+            args[i++] = row.getChangeDrops();
+            args[i++] = row.getChangeLightning();
+            args[i++] = row.getRelatedId();
+            args[i++] = row.getDescription();
+            args[i++] = Timestamp.valueOf(row.getCreatedAt());
+        }
+        jdbcTemplate.update(sql.toString(), args);
+        insertStatements.increment();
+    }
+    
+    // 通过当前事务的连接执行 COPY，与其它写入同生共死
+    private void copy(List<Transaction> rows) {
+        StringBuilder csv = new StringBuilder(rows.size() * 96);
+        for (Transaction row : rows) {
+            csv.append(row.getId()).append(',')
+                    .append(row.getUserId()).append(',')
+                    .append(row.getType().name()).append(',')
+                    .append(row.getChangeDrops()).append(',')
+                    .append(row.getChangeLightning()).append(',');
+            if (row.getRelatedId() != null) {
+                csv.append(row.getRelatedId());
+            }
+            csv.append(',');
+            // 未加引号的空字段为 NULL，加引号的空串为 ''
+            if (row.getDescription() != null) {
+                csv.append('"').append(row.getDescription().replace("\"", "\"\"")).append('"');
+            }
+            csv.append(',').append(Timestamp.valueOf(row.getCreatedAt())).append('\n');
+        }
+        Long copied = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try {
+                return connection.unwrap(PGConnection.class).getCopyAPI()
+                        .copyIn(COPY_SQL, new StringReader(csv.toString()));
+            } catch (IOException e) {
+                throw new SQLException("COPY into transactions failed", e);
+            }
+        });
+        copyOperations.increment();
+        copiedRows.add(copied != null ? copied : 0);
+    }
+    
+    // 按 pooled 语义取号：每次 nextval 得到 (v - 50, v] 一段，与 Hibernate 分配的段互不重叠
+    private long[] allocateIds(int count) {
+        long[] ids = new long[count];
+        int filled = 0;
+        synchronized (preallocatedIds) {
+            if (!preallocatedIds.isEmpty() && System.nanoTime() - preallocatedAt > ID_BLOCK_MAX_AGE_NANOS) {
+                preallocatedIds.clear();
+            }
+            while (filled < count && !preallocatedIds.isEmpty()) {
+                ids[filled++] = preallocatedIds.poll();
+            }
+            if (filled == count) {
+                return ids;
+            }
+            int blocks = (count - filled + ID_ALLOCATION_SIZE - 1) / ID_ALLOCATION_SIZE;
+            List<Long> hiValues = jdbcTemplate.queryForList(
+                    "SELECT nextval('" + SEQUENCE_NAME + "') FROM generate_series(1, ?)", Long.class, blocks);
+            preallocatedAt = System.nanoTime();
+            for (long hi : hiValues) {
+                for (long id = Math.max(1, hi - ID_ALLOCATION_SIZE + 1); id <= hi; id++) {
+                    if (filled < count) {
+                        ids[filled++] = id;
+                    } else {
+                        preallocatedIds.add(id);
+                    }
+                }
+            }
+        }
+        if (filled < count) {
+            // 序列从 1 开始时首段只有一个号，补取剩余部分
+            long[] rest = allocateIds(count - filled);
+            System.arraycopy(rest, 0, ids, filled, rest.length);
+        }
+        return ids;
+    }
+    
+    private class PendingEntries implements TransactionSynchronization {
+        
+        private final List<Transaction> entries = new ArrayList<>();
+        
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (!entries.isEmpty()) {
+                write(entries);
+            }
+        }
+        
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(LedgerAppender.this);
+        }
+    }
+}
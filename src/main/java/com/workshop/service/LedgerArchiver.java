@@ -0,0 +1,347 @@
+package com.workshop.service;
+
+import com.workshop.entity.Transaction;
+import com.workshop.util.LedgerSegmentCodec;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// 冷数据归档：超出在线保留期的月分区导出为压缩列存段文件 (本地磁盘或 MinIO)，段索引记入 ledger_segments 后删除分区；
+// 历史查询翻过在线数据后从段文件继续读取
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LedgerArchiver {
+    
+    private static final int FETCH_SIZE = 5000;
+    
+    private static final String SEGMENT_CONTENT_TYPE = "application/octet-stream";
+    
+    private static final String INSERT_SEGMENT_SQL =
+            "INSERT INTO ledger_segments (month, segment_no, storage, location, row_count, min_id, max_id, " +
+            "min_user_id, max_user_id, min_created_at, max_created_at, size_bytes) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    // 多节点的归档任务同时触发时只有一个节点执行，锁随事务释放
+    private static final String TRY_LOCK_SQL = "SELECT pg_try_advisory_xact_lock(hashtext('ledger-archive'))";
+    
+    private static final String FIND_SEGMENTS_SQL =
+            "SELECT s.month, s.storage, s.location FROM ledger_segments s " +
+            "WHERE s.min_user_id <= ? AND s.max_user_id >= ? AND s.min_created_at <= ? " +
+            "ORDER BY s.month DESC, s.segment_no";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final LedgerPartitionManager partitionManager;
+    private final MinioService minioService;
+    
+    @Value("${ledger.archive.enabled:true}")
+    private boolean enabled;
+    
+    // 在线保留的完整月份数 (不含当月)
+    @Value("${ledger.archive.retain-months:6}")
+    private int retainMonths;
+    
+    // minio 或 local；段索引是所有节点共享的，local 只能用于单节点部署
+    @Value("${ledger.archive.storage:minio}")
+    private String storage;
+    
+    @Value("${ledger.archive.single-node:false}")
+    private boolean singleNode;
+    
+    @Value("${ledger.archive.path:./data/ledger-archive}")
+    private String localPath;
+    
+    @Value("${ledger.archive.segment-rows:200000}")
+    private int segmentRows;
+    
+    @Value("${ledger.archive.cache-segments:16}")
+    private int cacheSegments;
+    
+    private final AtomicBoolean running = new AtomicBoolean();
+    
+    // 解码后的段按访问顺序淘汰
+    private final Map<String, LedgerSegmentCodec.Segment> segmentCache =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, LedgerSegmentCodec.Segment> eldest) {
+                    return size() > cacheSegments;
+                }
+            };
+    
+    private final LongAdder archivedMonths = new LongAdder();
+    private final LongAdder archivedRows = new LongAdder();
+    private final LongAdder segmentReads = new LongAdder();
+    private final LongAdder segmentCacheHits = new LongAdder();
+    
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        if (!"minio".equalsIgnoreCase(storage) && !"local".equalsIgnoreCase(storage)) {
+            throw new IllegalStateException("Unknown ledger.archive.storage: " + storage);
+        }
+        // 其它节点读不到本机磁盘上的段文件，翻到归档部分的历史查询会失败
+        if ("local".equalsIgnoreCase(storage) && !singleNode) {
+            throw new IllegalStateException("ledger.archive.storage=local requires ledger.archive.single-node=true; "
+                    + "use minio when more than one node serves requests");
+        }
+    }
+    
+    @Scheduled(cron = "${ledger.archive.cron:0 30 3 * * *}")
+    public void scheduledArchive() {
+        try {
+            archiveClosedMonths();
+        } catch (Exception e) {
+            log.error("Ledger archive run failed", e);
+        }
+    }
+    
+    // 逐月归档所有超出保留期的分区，返回归档的月数
+    public int archiveClosedMonths() {
+        if (!enabled || !partitionManager.isPartitioned() || !running.compareAndSet(false, true)) {
+            return 0;
+        }
+        try {
+            YearMonth cutoff = YearMonth.now().minusMonths(retainMonths);
+            int archived = 0;
+            for (String partition : partitionManager.listPartitions()) {
+                YearMonth month = LedgerPartitionManager.monthOf(partition).orElse(null);
+                if (month == null || !month.isBefore(cutoff)) {
+                    continue;
+                }
+                Outcome outcome = archiveMonth(partition, month);
+                if (outcome == Outcome.LOCKED) {
+                    log.info("Ledger archive is running on another node, skipping");
+                    break;
+                }
+                if (outcome == Outcome.ARCHIVED) {
+                    archived++;
+                }
+            }
+            return archived;
+        } finally {
+            running.set(false);
+        }
+    }
+    
+    // 读取归档中某用户早于游标的记录，按 (created_at, id) 降序
+    public List<Transaction> findHistory(Long userId, Transaction.TransactionType type,
+                                         LocalDateTime beforeCreatedAt, Long beforeId, int limit) {
+        if (!enabled || limit <= 0) {
+            return List.of();
+        }
+        Timestamp upper = Timestamp.valueOf(beforeCreatedAt != null ? beforeCreatedAt : LocalDateTime.now());
+        List<Map<String, Object>> segments = jdbcTemplate.queryForList(FIND_SEGMENTS_SQL, userId, userId, upper);
+        Long beforeMicros = beforeCreatedAt != null ? LedgerSegmentCodec.toMicros(beforeCreatedAt) : null;
+        String typeName = type != null ? type.name() : null;
+        
+        // 同一用户在一个月内只落在一个段中，段按月份倒序即为时间倒序
+        List<Transaction> result = new ArrayList<>();
+        for (Map<String, Object> segment : segments) {
+            LedgerSegmentCodec.Segment decoded =
+                    loadSegment((String) segment.get("storage"), (String) segment.get("location"));
+            result.addAll(decoded.findUserRows(userId, typeName, beforeMicros, beforeId, limit - result.size()));
+            if (result.size() >= limit) {
+                break;
+            }
+        }
+        return result;
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("storage", storage);
+        stats.put("retainMonths", retainMonths);
+        stats.put("onlinePartitions", partitionManager.isPartitioned() ? partitionManager.listPartitions() : List.of());
+        stats.put("archivedMonthsTotal", jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM ledger_archived_months", Long.class));
+        stats.put("segmentsTotal", jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ledger_segments", Long.class));
+        stats.put("segmentBytesTotal", jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(size_bytes), 0) FROM ledger_segments", Long.class));
+        stats.put("archivedMonthsSinceStart", archivedMonths.sum());
+        stats.put("archivedRowsSinceStart", archivedRows.sum());
+        stats.put("segmentReads", segmentReads.sum());
+        stats.put("segmentCacheHits", segmentCacheHits.sum());
+        return stats;
+    }
+    
+    // 一个事务内导出段文件、分离分区、核对行数、登记段索引并删除分区；中途失败时下次重新归档该月
+    private Outcome archiveMonth(String partition, YearMonth month) {
+        long started = System.currentTimeMillis();
+        List<Object[]> segmentRowsToInsert = new ArrayList<>();
+        long[] total = {0};
+        LocalDate monthStart = month.atDay(1);
+        
+        Outcome outcome = transactionTemplate.execute(status -> {
+            if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(TRY_LOCK_SQL, Boolean.class))) {
+                return Outcome.LOCKED;
+            }
+            // 分区列表是加锁前读的，期间可能已被其它节点归档
+            if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                    "SELECT to_regclass(?) IS NOT NULL", Boolean.class, partition))) {
+                return Outcome.SKIPPED;
+            }
+            
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(
+                        "SELECT id, user_id, type, change_drops, change_lightning, related_id, description, created_at " +
+                        "FROM " + partition + " ORDER BY user_id, created_at DESC, id DESC");
+                ps.setFetchSize(FETCH_SIZE);
+                return ps;
+            }, (ResultSetExtractor<Void>) rs -> {
+                List<Transaction> buffer = new ArrayList<>();
+                long currentUser = Long.MIN_VALUE;
+                while (rs.next()) {
+                    long userId = rs.getLong("user_id");
+                    // 只在用户边界切段，保证一个用户在一个月内只属于一个段
+                    if (userId != currentUser && buffer.size() >= segmentRows) {
+                        segmentRowsToInsert.add(writeSegment(month, segmentRowsToInsert.size() + 1, buffer));
+                        total[0] += buffer.size();
+                        buffer = new ArrayList<>();
+                    }
+                    currentUser = userId;
+                    Transaction row = new Transaction();
+                    row.setId(rs.getLong("id"));
+                    row.setUserId(userId);
+                    row.setType(Transaction.TransactionType.valueOf(rs.getString("type")));
+                    row.setChangeDrops(rs.getInt("change_drops"));
+                    row.setChangeLightning(rs.getInt("change_lightning"));
+                    long relatedId = rs.getLong("related_id");
+                    row.setRelatedId(rs.wasNull() ? null : relatedId);
+                    row.setDescription(rs.getString("description"));
+                    row.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
+                    buffer.add(row);
+                }
+                if (!buffer.isEmpty()) {
+                    segmentRowsToInsert.add(writeSegment(month, segmentRowsToInsert.size() + 1, buffer));
+                    total[0] += buffer.size();
+                }
+                return null;
+            });
+            
+            // 先摘除分区再核对行数：摘除后不会再有新行写入，核对不一致时整个事务回滚，分区重新挂回
+            jdbcTemplate.execute("ALTER TABLE transactions DETACH PARTITION " + partition);
+            Long online = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + partition, Long.class);
+            if (online == null || online != total[0]) {
+                throw new IllegalStateException("Partition " + partition + " changed during archive: "
+                        + online + " rows online, " + total[0] + " archived");
+            }
+            jdbcTemplate.update("DELETE FROM ledger_segments WHERE month = ?", monthStart);
+            if (!segmentRowsToInsert.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_SEGMENT_SQL, segmentRowsToInsert);
+            }
+            jdbcTemplate.update("INSERT INTO ledger_archived_months (month, segment_count, row_count) VALUES (?, ?, ?) " +
+                    "ON CONFLICT (month) DO UPDATE SET segment_count = EXCLUDED.segment_count, " +
+                    "row_count = EXCLUDED.row_count, archived_at = now()",
+                    monthStart, segmentRowsToInsert.size(), total[0]);
+            jdbcTemplate.execute("DROP TABLE " + partition);
+            return Outcome.ARCHIVED;
+        });
+        if (outcome == Outcome.ARCHIVED) {
+            archivedMonths.increment();
+            archivedRows.add(total[0]);
+            log.info("Archived ledger partition {} ({} rows, {} segments) in {} ms",
+                    partition, total[0], segmentRowsToInsert.size(), System.currentTimeMillis() - started);
+        }
+        return outcome;
+    }
+    
+    private Object[] writeSegment(YearMonth month, int segmentNo, List<Transaction> rows) {
+        long minId = Long.MAX_VALUE;
+        long maxId = Long.MIN_VALUE;
+        LocalDateTime minCreatedAt = null;
+        LocalDateTime maxCreatedAt = null;
+        for (Transaction row : rows) {
+            minId = Math.min(minId, row.getId());
+            maxId = Math.max(maxId, row.getId());
+            if (minCreatedAt == null || row.getCreatedAt().isBefore(minCreatedAt)) {
+                minCreatedAt = row.getCreatedAt();
+            }
+            if (maxCreatedAt == null || row.getCreatedAt().isAfter(maxCreatedAt)) {
+                maxCreatedAt = row.getCreatedAt();
+            }
+        }
+        String location = String.format("ledger-archive/%s/segment-%04d.seg", month, segmentNo);
+        byte[] content;
+        try {
+            content = LedgerSegmentCodec.encode(rows);
+            if ("minio".equalsIgnoreCase(storage)) {
+                minioService.uploadBytes(location, content, SEGMENT_CONTENT_TYPE);
+            } else {
+                Path target = Paths.get(localPath).resolve(location);
+                Files.createDirectories(target.getParent());
+                Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+                Files.write(temp, content);
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write ledger segment " + location, e);
+        }
+        return new Object[]{month.atDay(1), segmentNo, storage.toLowerCase(), location, rows.size(), minId, maxId,
+                rows.get(0).getUserId(), rows.get(rows.size() - 1).getUserId(),
+                Timestamp.valueOf(minCreatedAt), Timestamp.valueOf(maxCreatedAt), (long) content.length};
+    }
+    
+    private LedgerSegmentCodec.Segment loadSegment(String segmentStorage, String location) {
+        String key = segmentStorage + ":" + location;
+        synchronized (segmentCache) {
+            LedgerSegmentCodec.Segment cached = segmentCache.get(key);
+            if (cached != null) {
+                segmentCacheHits.increment();
+                return cached;
+            }
+        }
+        try {
+            byte[] content;
+            if ("minio".equals(segmentStorage)) {
+                try (InputStream in = minioService.getFile(location)) {
+                    if (in == null) {
+                        throw new IOException("Segment not found in MinIO");
+                    }
+                    content = in.readAllBytes();
+                }
+            } else {
+                content = Files.readAllBytes(Paths.get(localPath).resolve(location));
+            }
+            LedgerSegmentCodec.Segment segment = LedgerSegmentCodec.decode(content);
+            segmentReads.increment();
+            synchronized (segmentCache) {
+                segmentCache.put(key, segment);
+            }
+            return segment;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read ledger segment " + location, e);
+        }
+    }
+    
+    private enum Outcome {
+        ARCHIVED, SKIPPED, LOCKED
+    }
+}
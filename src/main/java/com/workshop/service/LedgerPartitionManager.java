@@ -0,0 +1,173 @@
+package com.workshop.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Optional;
+
+// transactions 按 created_at 月度分区：启动时把普通表迁移为分区表，并始终提前建好后续几个月的分区
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LedgerPartitionManager {
+    
+    public static final String PARTITION_PREFIX = "transactions_p";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+    
+    private static final String IS_PARTITIONED_SQL =
+            "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass('transactions'))";
+    
+    private static final String LIST_PARTITIONS_SQL =
+            "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = to_regclass('transactions') ORDER BY c.relname";
+    
+    private static final String CREATE_PARTITIONED_SQL =
+            "CREATE TABLE transactions (" +
+            "id BIGINT NOT NULL, " +
+            "user_id BIGINT NOT NULL, " +
+            "type VARCHAR(50) NOT NULL, " +
+            "change_drops INTEGER NOT NULL, " +
+            "change_lightning INTEGER NOT NULL, " +
+            "related_id BIGINT, " +
+            "description VARCHAR(255), " +
+            "created_at TIMESTAMP(6) NOT NULL, " +
+            "PRIMARY KEY (id, created_at)" +
+            ") PARTITION BY RANGE (created_at)";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    
+    @Value("${ledger.partition.enabled:true}")
+    private boolean enabled;
+    
+    // 已有数据的普通表在启动时一次性迁移，期间锁表
+    @Value("${ledger.partition.migrate-on-startup:true}")
+    private boolean migrateOnStartup;
+    
+    @Value("${ledger.partition.months-ahead:3}")
+    private int monthsAhead;
+    
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        if (!isPartitioned()) {
+            if (!migrateOnStartup) {
+                log.warn("transactions is not partitioned and ledger.partition.migrate-on-startup is off");
+                return;
+            }
+            migrate();
+        }
+        ensurePartitions();
+    }
+    
+    public boolean isPartitioned() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(IS_PARTITIONED_SQL, Boolean.class));
+    }
+    
+    // 当月起向后 monthsAhead 个月的分区
+    @Scheduled(cron = "${ledger.partition.maintain-cron:0 0 3 * * *}")
+    public void ensurePartitions() {
+        if (!enabled || !isPartitioned()) {
+            return;
+        }
+        YearMonth current = YearMonth.now();
+        for (int i = 0; i <= monthsAhead; i++) {
+            createPartition(current.plusMonths(i));
+        }
+    }
+    
+    public List<String> listPartitions() {
+        return jdbcTemplate.queryForList(LIST_PARTITIONS_SQL, String.class);
+    }
+    
+    public static Optional<YearMonth> monthOf(String partitionName) {
+        if (!partitionName.startsWith(PARTITION_PREFIX)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(YearMonth.parse(partitionName.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX));
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+    }
+    
+    public static String partitionName(YearMonth month) {
+        return PARTITION_PREFIX + month.format(PARTITION_SUFFIX);
+    }
+    
+    private void createPartition(YearMonth month) {
+        try {
+            createPartitionTable(month);
+        } catch (Exception e) {
+            // 默认分区中已有该月数据时无法创建，数据仍可写入默认分区
+            log.error("Failed to create ledger partition for {}", month, e);
+        }
+    }
+    
+    // 迁移事务内直接抛出：PostgreSQL 事务出错后已处于中止状态，吞掉异常只会让后续语句报出误导性错误
+    private void createPartitionTable(YearMonth month) {
+        LocalDate from = month.atDay(1);
+        LocalDate to = month.plusMonths(1).atDay(1);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(month) +
+                " PARTITION OF transactions FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+    }
+    
+    private void migrate() {
+        long started = System.currentTimeMillis();
+        transactionTemplate.executeWithoutResult(status -> {
+            // 多个节点同时启动时串行迁移，后拿到锁的节点看到已分区后直接跳过
+            jdbcTemplate.execute("SELECT pg_advisory_xact_lock(hashtext('ledger-partition-migrate'))");
+            if (isPartitioned()) {
+                log.info("transactions was partitioned by another node");
+                return;
+            }
+            jdbcTemplate.execute("LOCK TABLE transactions IN ACCESS EXCLUSIVE MODE");
+            jdbcTemplate.execute("ALTER TABLE transactions RENAME TO transactions_unpartitioned");
+            List<String> constraints = jdbcTemplate.queryForList(
+                    "SELECT conname FROM pg_constraint WHERE conrelid = to_regclass('transactions_unpartitioned') " +
+                    "AND contype = 'p'", String.class);
+            for (String constraint : constraints) {
+                jdbcTemplate.execute("ALTER TABLE transactions_unpartitioned RENAME CONSTRAINT "
+                        + constraint + " TO transactions_unpartitioned_pkey");
+            }
+            jdbcTemplate.execute("DROP INDEX IF EXISTS idx_transactions_user_created");
+            jdbcTemplate.execute("DROP INDEX IF EXISTS idx_transactions_user_type_created");
+            jdbcTemplate.execute(CREATE_PARTITIONED_SQL);
+            jdbcTemplate.execute("CREATE TABLE transactions_default PARTITION OF transactions DEFAULT");
+            
+            Timestamp oldest = jdbcTemplate.queryForObject(
+                    "SELECT MIN(created_at) FROM transactions_unpartitioned", Timestamp.class);
+            YearMonth last = YearMonth.now().plusMonths(monthsAhead);
+            if (oldest != null) {
+                for (YearMonth month = YearMonth.from(oldest.toLocalDateTime()); !month.isAfter(last);
+                     month = month.plusMonths(1)) {
+                    createPartitionTable(month);
+                }
+            }
+            int copied = jdbcTemplate.update(
+                    "INSERT INTO transactions (id, user_id, type, change_drops, change_lightning, related_id, " +
+                    "description, created_at) SELECT id, user_id, type, change_drops, change_lightning, related_id, " +
+                    "description, created_at FROM transactions_unpartitioned");
+            jdbcTemplate.execute(
+                    "CREATE INDEX idx_transactions_user_created ON transactions (user_id, created_at, id)");
+            jdbcTemplate.execute(
+                    "CREATE INDEX idx_transactions_user_type_created ON transactions (user_id, type, created_at, id)");
+            jdbcTemplate.execute("DROP TABLE transactions_unpartitioned");
+            log.info("Migrated {} ledger rows into monthly partitions", copied);
+        });
+        log.info("Ledger partition migration finished in {} ms", System.currentTimeMillis() - started);
+    }
+}
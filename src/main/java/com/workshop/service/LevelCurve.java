@@ -0,0 +1,53 @@
+package com.workshop.service;
+
+import java.util.Arrays;
+import java.util.StringJoiner;
+
+// 等级曲线：下标即等级，值为该等级所需闪电数，非递减且从 0 开始。
+// 数据库侧用 width_bucket 对同一数组二分查找，新等级 = 不超过闪电数的阈值个数 - 1
+public final class LevelCurve {
+    
+    // LV0-LV20；LV0 -> LV1 只能通过入站考试，曲线只决定 LV1 及以上用户的升级
+    public static final LevelCurve DEFAULT = new LevelCurve(new int[]{
+            0, 0, 200, 500, 800, 1300, 1800, 2800, 4000, 5000, 7000,
+            9000, 12000, 15000, 18000, 23000, 28000, 35000, 42000, 50000, 60000});
+    
+    private final String sqlArray;
+    
+    private LevelCurve(int[] thresholds) {
+        StringJoiner joiner = new StringJoiner(",", "{", "}");
+        for (int threshold : thresholds) {
+            joiner.add(Integer.toString(threshold));
+        }
+        this.sqlArray = joiner.toString();
+    }
+    
+    // 格式 "0,0,200,500,..."，不合法时返回 null
+    public static LevelCurve parse(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            int[] thresholds = Arrays.stream(value.split(","))
+                    .map(String::trim)
+                    .mapToInt(Integer::parseInt)
+                    .toArray();
+            if (thresholds[0] != 0) {
+                return null;
+            }
+            for (int i = 1; i < thresholds.length; i++) {
+                if (thresholds[i] < thresholds[i - 1]) {
+                    return null;
+                }
+            }
+            return new LevelCurve(thresholds);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    // 传给 CAST(? AS int[]) 的数组字面量
+    public String toSqlArray() {
+        return sqlArray;
+    }
+}
@@ -0,0 +1,167 @@
+package com.workshop.service;
+
+import com.workshop.exception.BusinessException;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 按当前等级曲线重算全部用户等级：按 id 区间分块执行集合 UPDATE，每块独立提交，
+// 块间暂停，连接池出现排队时退让更久。与增量入账一致只升不降：调高阈值不会让已有用户降级，
+// LV0 用户须通过入站考试才能升级，重算不会改动
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LevelRebuilder {
+    
+    private static final String RELEVEL_SQL =
+            "UPDATE users SET level = width_bucket(lightning, CAST(? AS int[])) - 1 " +
+            "WHERE id BETWEEN ? AND ? AND level >= 1 AND level < width_bucket(lightning, CAST(? AS int[])) - 1";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+    private final SystemConfigService systemConfigService;
+    
+    @Value("${level-rebuild.chunk-size:5000}")
+    private int chunkSize;
+    
+    @Value("${level-rebuild.pause-ms:20}")
+    private long pauseMs;
+    
+    @Value("${level-rebuild.busy-pause-ms:500}")
+    private long busyPauseMs;
+    
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean cancelRequested;
+    private volatile Map<String, Object> progress = Map.of("status", "IDLE");
+    
+    public Map<String, Object> start() {
+        if (!running.compareAndSet(false, true)) {
+            throw new BusinessException("等级重算任务正在运行");
+        }
+        cancelRequested = false;
+        try {
+            String thresholds = systemConfigService.getLevelCurve().toSqlArray();
+            Map<String, Object> bounds = jdbcTemplate.queryForMap("SELECT MIN(id) AS lo, MAX(id) AS hi FROM users");
+            long lo = bounds.get("lo") != null ? ((Number) bounds.get("lo")).longValue() : 0;
+            long hi = bounds.get("hi") != null ? ((Number) bounds.get("hi")).longValue() : -1;
+            Progress job = new Progress(thresholds, lo, hi);
+            progress = job.snapshot("RUNNING");
+            
+            Thread thread = new Thread(() -> run(job), "level-rebuilder");
+            thread.setDaemon(true);
+            thread.start();
+            return progress;
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+    
+    public void cancel() {
+        if (running.get()) {
+            cancelRequested = true;
+        }
+    }
+    
+    public Map<String, Object> getProgress() {
+        return progress;
+    }
+    
+    private void run(Progress job) {
+        String status = "COMPLETED";
+        try {
+            for (long from = job.minId; from <= job.maxId; from += chunkSize) {
+                if (cancelRequested) {
+                    status = "CANCELLED";
+                    break;
+                }
+                long to = Math.min(job.maxId, from + chunkSize - 1);
+                job.updatedUsers += jdbcTemplate.update(RELEVEL_SQL, job.thresholds, from, to, job.thresholds);
+                job.currentId = to;
+                job.chunks++;
+                progress = job.snapshot("RUNNING");
+                
+                if (isPoolBusy()) {
+                    job.throttledChunks++;
+                    Thread.sleep(busyPauseMs);
+                } else if (pauseMs > 0) {
+                    Thread.sleep(pauseMs);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = "CANCELLED";
+        } catch (Exception e) {
+            log.error("Level rebuild failed at user id {}", job.currentId, e);
+            job.error = e.getMessage();
+            status = "FAILED";
+        } finally {
+            job.finishedAt = LocalDateTime.now();
+            progress = job.snapshot(status);
+            running.set(false);
+            log.info("Level rebuild {}: {} users updated in {} chunks", status, job.updatedUsers, job.chunks);
+        }
+    }
+    
+    // 有请求在等待连接时说明池已吃紧
+    private boolean isPoolBusy() {
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                HikariPoolMXBean pool = dataSource.unwrap(HikariDataSource.class).getHikariPoolMXBean();
+                return pool != null && pool.getThreadsAwaitingConnection() > 0;
+            }
+        } catch (Exception e) {
+            log.debug("Failed to read connection pool state", e);
+        }
+        return false;
+    }
+    
+    private static final class Progress {
+        
+        private final String thresholds;
+        private final long minId;
+        private final long maxId;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private volatile long currentId;
+        private volatile long chunks;
+        private volatile long updatedUsers;
+        private volatile long throttledChunks;
+        private volatile LocalDateTime finishedAt;
+        private volatile String error;
+        
+        private Progress(String thresholds, long minId, long maxId) {
+            this.thresholds = thresholds;
+            this.minId = minId;
+            this.maxId = maxId;
+            this.currentId = minId - 1;
+        }
+        
+        private Map<String, Object> snapshot(String status) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("status", status);
+            map.put("levelThresholds", thresholds);
+            map.put("minId", minId);
+            map.put("maxId", maxId);
+            map.put("currentId", currentId);
+            long total = maxId - minId + 1;
+            map.put("percent", total > 0 ? Math.min(100.0, (currentId - minId + 1) * 100.0 / total) : 100.0);
+            map.put("chunks", chunks);
+            map.put("updatedUsers", updatedUsers);
+            map.put("throttledChunks", throttledChunks);
+            map.put("startedAt", startedAt);
+            map.put("finishedAt", finishedAt);
+            map.put("error", error);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,618 @@
+package com.workshop.service;
+
+import com.workshop.dto.map.MapSearchResponse;
+import com.workshop.dto.map.MapSummaryResponse;
+import com.workshop.exception.BusinessException;
+import com.workshop.util.PostingList;
+import com.workshop.util.TextTokenizer;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// 地图全文检索：title/description/originalAuthor 按中日韩二元组 + 字母数字词切分，倒排表为变长整数压缩数组，
+// 查询在内存中求交并按 BM25 排序，不访问数据库。已审核地图新增或修改后在事务提交时增量更新，
+// 其它节点的修改按 updated_at 定时追平，其它节点删除或停机期间删除的地图由定期对账剔除；
+// 索引定期落盘，重启时先读快照再追平增量
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MapSearchIndex {
+    
+    private static final int MAX_RESULTS = 50;
+    private static final int MAX_QUERY_LENGTH = 64;
+    private static final int TITLE_WEIGHT = 2;
+    private static final int BATCH_SIZE = 2000;
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    
+    private static final int SNAPSHOT_MAGIC = 0x4D534958;
+    private static final int SNAPSHOT_VERSION = 2;
+    
+    private static final String COLUMNS =
+            "SELECT id, title, description, original_author, cover_image, author_id, type, download_cost, views, " +
+            "status, created_at, updated_at FROM maps ";
+    
+    private static final String LOAD_SQL =
+            COLUMNS + "WHERE status = 'APPROVED' AND id > ? ORDER BY id LIMIT ?";
+    
+    private static final String CHANGES_SQL =
+            COLUMNS + "WHERE updated_at >= ? AND (updated_at > ? OR id > ?) ORDER BY updated_at, id LIMIT ?";
+    
+    // 索引中存在但库中已删除或不再是已审核状态的地图
+    private static final String STALE_IDS_SQL =
+            "SELECT t.id FROM unnest(CAST(? AS bigint[])) AS t(id) WHERE NOT EXISTS " +
+            "(SELECT 1 FROM maps m WHERE m.id = t.id AND m.status = 'APPROVED')";
+    
+    private static final RowMapper<MapRow> ROW_MAPPER = (rs, n) -> new MapRow(
+            rs.getLong("id"), rs.getString("title"), rs.getString("description"), rs.getString("original_author"),
+            rs.getString("cover_image"), rs.getLong("author_id"),
+            com.workshop.entity.Map.MapType.valueOf(rs.getString("type")), rs.getInt("download_cost"),
+            rs.getInt("views"), com.workshop.entity.Map.MapStatus.valueOf(rs.getString("status")),
+            rs.getTimestamp("created_at").toLocalDateTime(), rs.getTimestamp("updated_at").toLocalDateTime());
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    @Value("${map-search.snapshot-path:./data/map-search.idx}")
+    private String snapshotPath;
+    
+    // 追平时回看的时间窗，覆盖提交晚于 updated_at 的事务
+    @Value("${map-search.sync-overlap-ms:5000}")
+    private long syncOverlapMs;
+    
+    @Value("${map-search.compact-threshold:1000}")
+    private int compactThreshold;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile Index index = new Index();
+    private volatile boolean ready;
+    private volatile boolean dirty;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder queryNanos = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+    private volatile long lastSyncRows;
+    private volatile LocalDateTime lastSyncAt;
+    private volatile LocalDateTime lastSnapshotAt;
+    private volatile long lastReconcileRemoved;
+    private volatile LocalDateTime lastReconcileAt;
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        Thread thread = new Thread(() -> {
+            try {
+                Index loaded = readSnapshot();
+                if (loaded == null) {
+                    loaded = build();
+                    dirty = true;
+                }
+                swap(loaded);
+                sync();
+                reconcile();
+                log.info("Map search index ready with {} documents", loaded.ordinals.size());
+            } catch (Exception e) {
+                log.error("Failed to build map search index", e);
+            }
+        }, "map-search-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    public MapSearchResponse search(String query, int limit) {
+        if (query == null || query.isBlank()) {
+            throw new BusinessException("请输入搜索词");
+        }
+        if (!ready) {
+            throw new BusinessException("搜索索引正在加载，请稍后重试");
+        }
+        long start = System.nanoTime();
+        String text = query.length() > MAX_QUERY_LENGTH ? query.substring(0, MAX_QUERY_LENGTH) : query;
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(TextTokenizer.tokenize(text)));
+        int size = Math.max(1, Math.min(limit, MAX_RESULTS));
+        
+        List<MapSummaryResponse> items = new ArrayList<>();
+        int total = 0;
+        lock.readLock().lock();
+        try {
+            Index current = index;
+            List<PostingList> lists = new ArrayList<>();
+            for (String term : terms) {
+                PostingList list = current.postings.get(term);
+                if (list == null) {
+                    lists.clear();
+                    break;
+                }
+                lists.add(list);
+            }
+            if (!lists.isEmpty()) {
+                // 从最短的倒排表开始求交，候选集只会越来越小
+                lists.sort(Comparator.comparingInt(PostingList::getCount));
+                int live = current.ordinals.size();
+                float avgLength = live > 0 ? (float) current.totalLength / live : 1f;
+                HashMap<Integer, Float> scores = null;
+                for (PostingList list : lists) {
+                    float idf = (float) Math.log(1 + (live - list.getCount() + 0.5) / (list.getCount() + 0.5));
+                    HashMap<Integer, Float> next = new HashMap<>();
+                    PostingList.Cursor cursor = list.cursor();
+                    while (cursor.next()) {
+                        int doc = cursor.doc();
+                        Float previous = scores == null ? Float.valueOf(0f) : scores.get(doc);
+                        Doc entry = current.docs.get(doc);
+                        if (previous == null || entry == null) {
+                            continue;
+                        }
+                        float tf = cursor.freq();
+                        float norm = K1 * (1 - B + B * entry.length / avgLength);
+                        next.put(doc, previous + idf * tf * (K1 + 1) / (tf + norm));
+                    }
+                    scores = next;
+                    if (scores.isEmpty()) {
+                        break;
+                    }
+                }
+                total = scores.size();
+                PriorityQueue<Map.Entry<Integer, Float>> top = new PriorityQueue<>(
+                        Map.Entry.<Integer, Float>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+                for (Map.Entry<Integer, Float> entry : scores.entrySet()) {
+                    top.offer(entry);
+                    if (top.size() > size) {
+                        top.poll();
+                    }
+                }
+                while (!top.isEmpty()) {
+                    items.add(current.docs.get(top.poll().getKey()).summary);
+                }
+                Collections.reverse(items);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        long elapsed = System.nanoTime() - start;
+        queries.increment();
+        queryNanos.add(elapsed);
+        return new MapSearchResponse(items, total, elapsed / 1000);
+    }
+    
+    // 实体监听器调用：事务提交后才更新索引，回滚的修改不会被检索到
+    public void onMapChanged(com.workshop.entity.Map map) {
+        MapRow row = MapRow.of(map);
+        runAfterCommit(() -> apply(List.of(row)));
+    }
+    
+    public void onMapRemoved(Long mapId) {
+        runAfterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                Integer ordinal = index.ordinals.get(mapId);
+                if (ordinal != null) {
+                    index.remove(ordinal);
+                    dirty = true;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+    
+    @Scheduled(fixedDelayString = "${map-search.sync-interval:30000}",
+            initialDelayString = "${map-search.sync-interval:30000}")
+    public synchronized void sync() {
+        if (!ready) {
+            return;
+        }
+        LocalDateTime from = index.watermark.minus(Duration.ofMillis(syncOverlapMs));
+        long afterId = 0;
+        long rows = 0;
+        while (true) {
+            List<MapRow> batch = jdbcTemplate.query(CHANGES_SQL, ROW_MAPPER,
+                    Timestamp.valueOf(from), Timestamp.valueOf(from), afterId, BATCH_SIZE);
+            apply(batch);
+            rows += batch.size();
+            if (batch.size() < BATCH_SIZE) {
+                break;
+            }
+            MapRow last = batch.get(batch.size() - 1);
+            from = last.updatedAt;
+            afterId = last.id;
+        }
+        lastSyncRows = rows;
+        lastSyncAt = LocalDateTime.now();
+        compactIfNeeded();
+    }
+    
+    // 追平只能看到仍存在的行，删除需按 id 对账：分批核对索引中的地图在库中是否仍为已审核。
+    // 对账开始后才被修改的文档交给追平处理，避免把刚通过审核的地图误删
+    @Scheduled(fixedDelayString = "${map-search.reconcile-interval:600000}",
+            initialDelayString = "${map-search.reconcile-interval:600000}")
+    public synchronized void reconcile() {
+        if (!ready) {
+            return;
+        }
+        LocalDateTime startedAt = LocalDateTime.now().minus(Duration.ofMillis(syncOverlapMs));
+        List<Long> ids;
+        lock.readLock().lock();
+        try {
+            ids = new ArrayList<>(index.ordinals.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+        long removed = 0;
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            StringJoiner batch = new StringJoiner(",", "{", "}");
+            for (Long id : ids.subList(from, Math.min(from + BATCH_SIZE, ids.size()))) {
+                batch.add(id.toString());
+            }
+            List<Long> stale = jdbcTemplate.queryForList(STALE_IDS_SQL, Long.class, batch.toString());
+            if (stale.isEmpty()) {
+                continue;
+            }
+            lock.writeLock().lock();
+            try {
+                for (Long id : stale) {
+                    Integer ordinal = index.ordinals.get(id);
+                    if (ordinal != null && index.docs.get(ordinal).updatedAt.isBefore(startedAt)) {
+                        index.remove(ordinal);
+                        removed++;
+                    }
+                }
+                if (removed > 0) {
+                    dirty = true;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        lastReconcileRemoved = removed;
+        lastReconcileAt = LocalDateTime.now();
+        compactIfNeeded();
+    }
+    
+    public Map<String, Object> startRebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            throw new BusinessException("搜索索引正在重建");
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                swap(build());
+                dirty = true;
+                sync();
+                log.info("Map search index rebuilt with {} documents", index.ordinals.size());
+            } catch (Exception e) {
+                log.error("Failed to rebuild map search index", e);
+            } finally {
+                rebuilding.set(false);
+            }
+        }, "map-search-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+        return getStats();
+    }
+    
+    @Scheduled(fixedDelayString = "${map-search.snapshot-interval:600000}",
+            initialDelayString = "${map-search.snapshot-interval:600000}")
+    public void snapshot() {
+        if (!ready || !dirty) {
+            return;
+        }
+        Path target = Paths.get(snapshotPath);
+        lock.readLock().lock();
+        try {
+            dirty = false;
+            Path parent = target.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, "map-search", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                index.write(out);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lastSnapshotAt = LocalDateTime.now();
+        } catch (IOException e) {
+            dirty = true;
+            log.error("Failed to write map search snapshot to {}", target, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        snapshot();
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ready", ready);
+        stats.put("rebuilding", rebuilding.get());
+        lock.readLock().lock();
+        try {
+            Index current = index;
+            long postingBytes = 0;
+            for (PostingList list : current.postings.values()) {
+                postingBytes += list.getSizeInBytes();
+            }
+            stats.put("documents", current.ordinals.size());
+            stats.put("deletedDocuments", current.deletedDocs);
+            stats.put("terms", current.postings.size());
+            stats.put("postingBytes", postingBytes);
+            stats.put("watermark", current.watermark);
+        } finally {
+            lock.readLock().unlock();
+        }
+        long count = queries.sum();
+        stats.put("queries", count);
+        stats.put("avgQueryMicros", count > 0 ? queryNanos.sum() / count / 1000 : 0);
+        stats.put("compactions", compactions.sum());
+        stats.put("lastSyncRows", lastSyncRows);
+        stats.put("lastSyncAt", lastSyncAt);
+        stats.put("lastSnapshotAt", lastSnapshotAt);
+        stats.put("lastReconcileRemoved", lastReconcileRemoved);
+        stats.put("lastReconcileAt", lastReconcileAt);
+        return stats;
+    }
+    
+    private void apply(List<MapRow> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (MapRow row : rows) {
+                if (index.apply(row)) {
+                    dirty = true;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // 已删除条目超过阈值且占存活文档四分之一以上时重写倒排表
+    private void compactIfNeeded() {
+        lock.writeLock().lock();
+        try {
+            if (index.deletedDocs < compactThreshold || index.deletedDocs * 4L <= index.ordinals.size()) {
+                return;
+            }
+            index.compact();
+            compactions.increment();
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private void swap(Index built) {
+        lock.writeLock().lock();
+        try {
+            index = built;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // 先取当前最大 updated_at 作为水位，建完后由追平补上建索引期间的修改
+    private Index build() {
+        Index built = new Index();
+        Timestamp watermark = jdbcTemplate.queryForObject("SELECT MAX(updated_at) FROM maps", Timestamp.class);
+        if (watermark != null) {
+            built.watermark = watermark.toLocalDateTime();
+        }
+        long afterId = 0;
+        while (true) {
+            List<MapRow> batch = jdbcTemplate.query(LOAD_SQL, ROW_MAPPER, afterId, BATCH_SIZE);
+            for (MapRow row : batch) {
+                built.apply(row);
+            }
+            if (batch.size() < BATCH_SIZE) {
+                return built;
+            }
+            afterId = batch.get(batch.size() - 1).id;
+        }
+    }
+    
+    private Index readSnapshot() {
+        Path path = Paths.get(snapshotPath);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            Index loaded = Index.read(in);
+            log.info("Loaded map search snapshot from {}", path);
+            return loaded;
+        } catch (Exception e) {
+            log.warn("Ignoring unreadable map search snapshot {}", path, e);
+            return null;
+        }
+    }
+    
+    private static void runAfterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+    
+    // 文档序号只增不减，新文档总追加在倒排表末尾；修改即删除旧序号再分配新序号，删除的条目在压缩时清理
+    private static final class Index {
+        
+        private final HashMap<String, PostingList> postings = new HashMap<>();
+        private final HashMap<Long, Integer> ordinals = new HashMap<>();
+        private final ArrayList<Doc> docs = new ArrayList<>();
+        private long totalLength;
+        private int deletedDocs;
+        private LocalDateTime watermark = LocalDateTime.of(1970, 1, 1, 0, 0);
+        
+        private boolean apply(MapRow row) {
+            if (row.updatedAt.isAfter(watermark)) {
+                watermark = row.updatedAt;
+            }
+            Integer existing = ordinals.get(row.id);
+            boolean approved = row.status == com.workshop.entity.Map.MapStatus.APPROVED;
+            if (existing != null) {
+                if (approved && docs.get(existing).updatedAt.equals(row.updatedAt)) {
+                    return false;
+                }
+                remove(existing);
+            }
+            if (!approved) {
+                return existing != null;
+            }
+            HashMap<String, Integer> freqs = new HashMap<>();
+            for (String token : TextTokenizer.tokenizeForIndex(row.title)) {
+                freqs.merge(token, TITLE_WEIGHT, Integer::sum);
+            }
+            for (String token : TextTokenizer.tokenizeForIndex(row.description)) {
+                freqs.merge(token, 1, Integer::sum);
+            }
+            for (String token : TextTokenizer.tokenizeForIndex(row.originalAuthor)) {
+                freqs.merge(token, 1, Integer::sum);
+            }
+            int ordinal = docs.size();
+            int length = 0;
+            for (Map.Entry<String, Integer> entry : freqs.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), k -> new PostingList()).add(ordinal, entry.getValue());
+                length += entry.getValue();
+            }
+            docs.add(new Doc(row.summary(), length, row.updatedAt));
+            ordinals.put(row.id, ordinal);
+            totalLength += length;
+            return true;
+        }
+        
+        private void remove(int ordinal) {
+            Doc doc = docs.get(ordinal);
+            docs.set(ordinal, null);
+            ordinals.remove(doc.summary.getId());
+            totalLength -= doc.length;
+            deletedDocs++;
+        }
+        
+        private void compact() {
+            postings.replaceAll((term, list) -> list.compact(doc -> docs.get(doc) == null));
+            postings.values().removeIf(list -> list.getCount() == 0);
+            deletedDocs = 0;
+        }
+        
+        private void write(DataOutputStream out) throws IOException {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeUTF(watermark.toString());
+            out.writeInt(deletedDocs);
+            out.writeInt(docs.size());
+            for (Doc doc : docs) {
+                out.writeBoolean(doc != null);
+                if (doc != null) {
+                    MapSummaryResponse summary = doc.summary;
+                    out.writeLong(summary.getId());
+                    out.writeUTF(summary.getTitle());
+                    out.writeUTF(summary.getCoverImage() != null ? summary.getCoverImage() : "");
+                    out.writeLong(summary.getAuthorId());
+                    out.writeUTF(summary.getType().name());
+                    out.writeInt(summary.getDownloadCost());
+                    out.writeInt(summary.getViews());
+                    out.writeUTF(summary.getCreatedAt().toString());
+                    out.writeInt(doc.length);
+                    out.writeUTF(doc.updatedAt.toString());
+                }
+            }
+            out.writeInt(postings.size());
+            for (Map.Entry<String, PostingList> entry : postings.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().write(out);
+            }
+        }
+        
+        private static Index read(DataInputStream in) throws IOException {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported snapshot format");
+            }
+            Index loaded = new Index();
+            loaded.watermark = LocalDateTime.parse(in.readUTF());
+            loaded.deletedDocs = in.readInt();
+            int docCount = in.readInt();
+            for (int ordinal = 0; ordinal < docCount; ordinal++) {
+                if (!in.readBoolean()) {
+                    loaded.docs.add(null);
+                    continue;
+                }
+                long id = in.readLong();
+                String title = in.readUTF();
+                String coverImage = in.readUTF();
+                MapSummaryResponse summary = new MapSummaryResponse(id, title, coverImage.isEmpty() ? null : coverImage,
+                        in.readLong(), com.workshop.entity.Map.MapType.valueOf(in.readUTF()), in.readInt(),
+                        in.readInt(), LocalDateTime.parse(in.readUTF()));
+                int length = in.readInt();
+                Doc doc = new Doc(summary, length, LocalDateTime.parse(in.readUTF()));
+                loaded.docs.add(doc);
+                loaded.ordinals.put(id, ordinal);
+                loaded.totalLength += length;
+            }
+            int termCount = in.readInt();
+            for (int i = 0; i < termCount; i++) {
+                String term = in.readUTF();
+                loaded.postings.put(term, PostingList.read(in));
+            }
+            return loaded;
+        }
+    }
+    
+    private record Doc(MapSummaryResponse summary, int length, LocalDateTime updatedAt) {
+    }
+    
+    private record MapRow(Long id, String title, String description, String originalAuthor, String coverImage,
+                          Long authorId, com.workshop.entity.Map.MapType type, Integer downloadCost, Integer views,
+                          com.workshop.entity.Map.MapStatus status, LocalDateTime createdAt, LocalDateTime updatedAt) {
+        
+        private static MapRow of(com.workshop.entity.Map map) {
+            return new MapRow(map.getId(), map.getTitle(), map.getDescription(), map.getOriginalAuthor(),
+                    map.getCoverImage(), map.getAuthorId(), map.getType(), map.getDownloadCost(), map.getViews(),
+                    map.getStatus(), map.getCreatedAt(), map.getUpdatedAt());
+        }
+        
+        private MapSummaryResponse summary() {
+            return new MapSummaryResponse(id, title, coverImage, authorId, type, downloadCost, views, createdAt);
+        }
+    }
+}
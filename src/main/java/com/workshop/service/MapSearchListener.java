@@ -0,0 +1,28 @@
+package com.workshop.service;
+
+import com.workshop.entity.Map;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+// 地图实体写入后通知检索索引；索引延迟获取，避免实体管理器初始化时引入循环依赖
+@Component
+@RequiredArgsConstructor
+public class MapSearchListener {
+    
+    private final ObjectProvider<MapSearchIndex> mapSearchIndex;
+    
+    @PostPersist
+    @PostUpdate
+    public void onSaved(Map map) {
+        mapSearchIndex.getObject().onMapChanged(map);
+    }
+    
+    @PostRemove
+    public void onRemoved(Map map) {
+        mapSearchIndex.getObject().onMapRemoved(map.getId());
+    }
+}
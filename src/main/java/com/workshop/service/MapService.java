@@ -0,0 +1,117 @@
+package com.workshop.service;
+
+import com.workshop.dto.map.HotMapsResponse;
+import com.workshop.dto.map.MapListResponse;
+import com.workshop.dto.map.MapSearchResponse;
+import com.workshop.dto.map.MapSummaryResponse;
+import com.workshop.dto.map.MapViewStatsResponse;
+import com.workshop.entity.Map;
+import com.workshop.event.MapInteractionEvent;
+import com.workshop.event.TaskActionEvent;
+import com.workshop.exception.BusinessException;
+import com.workshop.repository.MapRepository;
+import com.workshop.util.CursorCodec;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Service
+@RequiredArgsConstructor
+public class MapService {
+    
+    private static final int MAX_PAGE_SIZE = 50;
+    
+    private final MapRepository mapRepository;
+    private final MapViewCounter mapViewCounter;
+    private final MapSearchIndex mapSearchIndex;
+    private final HotMapRanking hotMapRanking;
+    private final ApplicationEventPublisher eventPublisher;
+    
+    public enum SortOrder {
+        NEWEST, VIEWS
+    }
+    
+    // 公开列表只展示已通过审核的地图；cursor 为上一页最后一条的 (排序键, id)
+    @Transactional(readOnly = true)
+    public MapListResponse listMaps(String sort, Long authorId, String cursor, int size) {
+        SortOrder order;
+        try {
+            order = sort == null || sort.isBlank() ? SortOrder.NEWEST : SortOrder.valueOf(sort.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException("无效的排序方式");
+        }
+        Pageable pageable = PageRequest.of(0, Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
+        Map.MapStatus status = Map.MapStatus.APPROVED;
+        
+        Slice<MapSummaryResponse> slice;
+        if (order == SortOrder.NEWEST) {
+            CursorCodec.Cursor position = cursor == null || cursor.isBlank() ? null : CursorCodec.decode(cursor);
+            if (authorId == null) {
+                slice = position == null
+                        ? mapRepository.findNewest(status, pageable)
+                        : mapRepository.findNewestBefore(status, position.createdAt(), position.id(), pageable);
+            } else {
+                slice = position == null
+                        ? mapRepository.findNewestByAuthor(authorId, status, pageable)
+                        : mapRepository.findNewestByAuthorBefore(
+                                authorId, status, position.createdAt(), position.id(), pageable);
+            }
+        } else {
+            CursorCodec.KeyCursor position = cursor == null || cursor.isBlank() ? null : CursorCodec.decodeKey(cursor);
+            if (authorId == null) {
+                slice = position == null
+                        ? mapRepository.findMostViewed(status, pageable)
+                        : mapRepository.findMostViewedBefore(status, (int) position.key(), position.id(), pageable);
+            } else {
+                slice = position == null
+                        ? mapRepository.findMostViewedByAuthor(authorId, status, pageable)
+                        : mapRepository.findMostViewedByAuthorBefore(
+                                authorId, status, (int) position.key(), position.id(), pageable);
+            }
+        }
+        
+        List<MapSummaryResponse> items = slice.getContent();
+        String nextCursor = null;
+        if (slice.hasNext() && !items.isEmpty()) {
+            MapSummaryResponse last = items.get(items.size() - 1);
+            nextCursor = order == SortOrder.NEWEST
+                    ? CursorCodec.encode(last.getCreatedAt(), last.getId())
+                    : CursorCodec.encode(last.getViews(), last.getId());
+        }
+        return new MapListResponse(items, nextCursor, slice.hasNext());
+    }
+    
+    public MapSearchResponse search(String query, int size) {
+        return mapSearchIndex.search(query, size);
+    }
+    
+    public HotMapsResponse getHotMaps(int size) {
+        return hotMapRanking.getHotMaps(Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
+    }
+    
+    // 浏览只读一次主键确认地图存在，计数在内存累加；去重交给每日任务按用户记录的已浏览地图
+    public void recordView(Long mapId, Long viewerId) {
+        if (!mapRepository.existsByIdAndStatus(mapId, Map.MapStatus.APPROVED)) {
+            throw new BusinessException("地图不存在");
+        }
+        mapViewCounter.record(mapId, viewerId);
+        eventPublisher.publishEvent(new MapInteractionEvent(mapId, MapInteractionEvent.Kind.VIEW, 0));
+        if (viewerId != null) {
+            eventPublisher.publishEvent(new TaskActionEvent(viewerId, TaskActionEvent.Action.VIEW, mapId, 0));
+        }
+    }
+    
+    @Transactional(readOnly = true)
+    public MapViewStatsResponse getViewStats(Long mapId) {
+        Integer views = mapRepository.findViews(mapId, Map.MapStatus.APPROVED)
+                .orElseThrow(() -> new BusinessException("地图不存在"));
+        return new MapViewStatsResponse(mapId, views + mapViewCounter.getPendingViews(mapId),
+                mapViewCounter.getUniqueViewersToday(mapId));
+    }
+}
@@ -0,0 +1,163 @@
+package com.workshop.service;
+
+import com.workshop.util.HyperLogLog;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// 地图浏览计数：每次浏览只累加内存中按地图 id 分开的 LongAdder，定时用一条 UPDATE 批量加到 maps.views，
+// 热门地图不会因浏览成为热点行。登录用户的浏览另记入当天每张地图的 HyperLogLog，估计独立访客数而不逐人存储
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MapViewCounter {
+    
+    private static final int BATCH_SIZE = 1000;
+    
+    private static final String FLUSH_SQL =
+            "UPDATE maps m SET views = m.views + v.n " +
+            "FROM unnest(CAST(? AS bigint[]), CAST(? AS int[])) AS v(id, n) WHERE m.id = v.id";
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    @Value("${map-view.hll-precision:10}")
+    private int hllPrecision;
+    
+    private final ConcurrentHashMap<Long, LongAdder> pending = new ConcurrentHashMap<>();
+    private volatile DaySketches sketches = new DaySketches(LocalDate.now());
+    private final Object rotateLock = new Object();
+    
+    private final LongAdder recordedViews = new LongAdder();
+    private final LongAdder flushedViews = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    
+    public void record(Long mapId, Long viewerId) {
+        increment(mapId, 1);
+        recordedViews.increment();
+        if (viewerId != null) {
+            currentSketches().forMap(mapId, hllPrecision).add(viewerId);
+        }
+    }
+    
+    // 尚未写入数据库的浏览数，读详情时与 maps.views 相加
+    public long getPendingViews(Long mapId) {
+        LongAdder adder = pending.get(mapId);
+        return adder != null ? adder.sum() : 0;
+    }
+    
+    public long getUniqueViewersToday(Long mapId) {
+        HyperLogLog sketch = currentSketches().maps.get(mapId);
+        return sketch != null ? sketch.estimate() : 0;
+    }
+    
+    @Scheduled(fixedDelayString = "${map-view.flush-interval:5000}")
+    public synchronized void flush() {
+        List<Long> ids = new ArrayList<>();
+        List<Long> counts = new ArrayList<>();
+        for (Map.Entry<Long, LongAdder> entry : pending.entrySet()) {
+            long n = entry.getValue().sumThenReset();
+            if (n > 0) {
+                ids.add(entry.getKey());
+                counts.add(n);
+            } else {
+                // 一个周期内没有新浏览的计数器移除，record 发现计数器已被移除时会重新累加
+                pending.computeIfPresent(entry.getKey(), (k, v) -> v.sum() == 0 ? null : v);
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            int to = Math.min(ids.size(), from + BATCH_SIZE);
+            StringJoiner idArray = new StringJoiner(",", "{", "}");
+            StringJoiner countArray = new StringJoiner(",", "{", "}");
+            long total = 0;
+            for (int i = from; i < to; i++) {
+                idArray.add(ids.get(i).toString());
+                countArray.add(Long.toString(Math.min(counts.get(i), Integer.MAX_VALUE)));
+                total += counts.get(i);
+            }
+            try {
+                jdbcTemplate.update(FLUSH_SQL, idArray.toString(), countArray.toString());
+                flushedViews.add(total);
+            } catch (Exception e) {
+                flushFailures.increment();
+                log.error("Failed to flush views for {} maps, will retry", to - from, e);
+                for (int i = from; i < to; i++) {
+                    increment(ids.get(i), counts.get(i));
+                }
+            }
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+    
+    public Map<String, Object> getStats() {
+        DaySketches day = currentSketches();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pendingMaps", pending.size());
+        stats.put("recordedViews", recordedViews.sum());
+        stats.put("flushedViews", flushedViews.sum());
+        stats.put("flushFailures", flushFailures.sum());
+        stats.put("sketchDate", day.date);
+        stats.put("sketches", day.maps.size());
+        stats.put("sketchBytes", (long) day.maps.size() * (1L << hllPrecision));
+        return stats;
+    }
+    
+    private void increment(Long mapId, long n) {
+        while (true) {
+            LongAdder adder = pending.computeIfAbsent(mapId, k -> new LongAdder());
+            adder.add(n);
+            if (pending.get(mapId) == adder) {
+                return;
+            }
+            // 累加时计数器恰好被 flush 移除，这次累加作废，重新放入新计数器
+        }
+    }
+    
+    // 跨天时整体换成新的一组草图，前一天的独立访客估计随之丢弃
+    private DaySketches currentSketches() {
+        DaySketches day = sketches;
+        LocalDate today = LocalDate.now();
+        if (!day.date.equals(today)) {
+            synchronized (rotateLock) {
+                day = sketches;
+                if (!day.date.equals(today)) {
+                    day = new DaySketches(today);
+                    sketches = day;
+                }
+            }
+        }
+        return day;
+    }
+    
+    private static final class DaySketches {
+        private final LocalDate date;
+        private final ConcurrentHashMap<Long, HyperLogLog> maps = new ConcurrentHashMap<>();
+        
+        private DaySketches(LocalDate date) {
+            this.date = date;
+        }
+        
+        private HyperLogLog forMap(Long mapId, int precision) {
+            return maps.computeIfAbsent(mapId, k -> new HyperLogLog(precision));
+        }
+    }
+}
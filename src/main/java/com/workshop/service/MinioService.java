@@ -9,6 +9,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.concurrent.TimeUnit;
@@ -40,6 +41,23 @@ public class MinioService {
         }
     }
 
+    public void uploadBytes(String objectName, byte[] content, String contentType) throws IOException {
+        try {
+            minioClient.putObject(
+                    PutObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(objectName)
+                            .stream(new ByteArrayInputStream(content), content.length, -1)
+                            .contentType(contentType)
+                            .build()
+            );
+            log.info("Uploaded file to MinIO: {}", objectName);
+        } catch (Exception e) {
+            log.error("Failed to upload file to MinIO: {}", objectName, e);
+            throw new IOException("Failed to upload file to MinIO", e);
+        }
+    }
+
     public InputStream getFile(String objectName) throws IOException {
         try {
             return minioClient.getObject(
@@ -0,0 +1,23 @@
+package com.workshop.service;
+
+import com.workshop.entity.Transaction;
+
+// 记账分录的一条腿：amount 为带符号的变动量，正数入账、负数扣款
+public record PostingLeg(Long userId, Currency currency, int amount, Transaction.TransactionType type,
+                         Long relatedId, String description) {
+    
+    public enum Currency {
+        DROPS,
+        LIGHTNING
+    }
+    
+    public static PostingLeg drops(Long userId, int amount, Transaction.TransactionType type,
+                                   Long relatedId, String description) {
+        return new PostingLeg(userId, Currency.DROPS, amount, type, relatedId, description);
+    }
+    
+    public static PostingLeg lightning(Long userId, int amount, Transaction.TransactionType type,
+                                       Long relatedId, String description) {
+        return new PostingLeg(userId, Currency.LIGHTNING, amount, type, relatedId, description);
+    }
+}
@@ -0,0 +1,470 @@
+package com.workshop.service;
+
+import com.workshop.entity.Transaction;
+import com.workshop.exception.ServiceBusyException;
+import com.workshop.util.MappedJournal;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+// 签到奖励日志：签到请求不开数据库事务、不占连接，记录追加到本地内存映射文件，组提交落盘后即应答；
+// 后台批量占用当日签到 (daily_task_logs)、写入 users 和 transactions，并在同一事务中推进检查点，重启时重放检查点之后的记录。
+// 每条记录以 (用户, 日期) 为键，写库时只有当日尚未签到的记录才入账，重放、超时作废后重试留下的记录都不会重复发放
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RewardJournal {
+    
+    private static final String CHECKPOINT_SQL =
+            "SELECT applied_seq FROM reward_journal_checkpoints WHERE node_id = ?";
+    
+    // 批量占用签到：当日记录不存在则插入，已存在且未签到则置为已签到并登记发放数额，签到历史同语句置位。
+    // 只返回本批实际占用成功的记录，其它节点或直接写库路径已占用的当天不会再入账
+    private static final String CLAIM_BATCH_SQL =
+            "WITH d AS (SELECT * FROM unnest(CAST(? AS bigint[]), CAST(? AS date[]), CAST(? AS int[])) " +
+            "AS d(user_id, date, drops)), " +
+            "claim AS (INSERT INTO daily_task_logs (user_id, date, view_count, like_count, donate_drops, " +
+            "is_checked_in, login_rewarded, checkin_reward_drops) " +
+            "SELECT d.user_id, d.date, 0, 0, 0, true, false, d.drops FROM d JOIN users u ON u.id = d.user_id " +
+            "ORDER BY d.user_id, d.date " +
+            "ON CONFLICT (user_id, date) DO UPDATE SET is_checked_in = true, " +
+            "checkin_reward_drops = EXCLUDED.checkin_reward_drops WHERE NOT daily_task_logs.is_checked_in " +
+            "RETURNING id, user_id, date), " +
+            "history AS (INSERT INTO checkin_history (user_id, year, bits) " +
+            "SELECT user_id, CAST(EXTRACT(YEAR FROM date) AS int), " +
+            "bit_or(CAST(B'1' AS bit(366)) >> (CAST(EXTRACT(DOY FROM date) AS int) - 1)) FROM claim GROUP BY 1, 2 " +
+            "ON CONFLICT (user_id, year) DO UPDATE SET bits = checkin_history.bits | EXCLUDED.bits) " +
+            "SELECT id, user_id, date FROM claim";
+    
+    private static final String SAVE_CHECKPOINT_SQL =
+            "INSERT INTO reward_journal_checkpoints (node_id, applied_seq, updated_at) VALUES (?, ?, now()) " +
+            "ON CONFLICT (node_id) DO UPDATE SET applied_seq = EXCLUDED.applied_seq, updated_at = now()";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionService transactionService;
+    private final LedgerAppender ledgerAppender;
+    
+    // 关闭时签到在一个事务内直接写库
+    @Value("${reward-journal.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${reward-journal.path:./data/reward-journal}")
+    private String path;
+    
+    // 每个节点有自己的日志文件和检查点，必须是固定配置的值：换了 id 的节点不会重放旧 id 的日志
+    @Value("${reward-journal.node-id:local}")
+    private String nodeId;
+    
+    @Value("${reward-journal.segment-size:67108864}")
+    private int segmentSize;
+    
+    @Value("${reward-journal.ack-timeout:1000}")
+    private long ackTimeoutMillis;
+    
+    @Value("${reward-journal.drain-batch-size:5000}")
+    private int drainBatchSize;
+    
+    private MappedJournal journal;
+    private Thread flusher;
+    private volatile boolean running;
+    
+    private final Object durableMonitor = new Object();
+    private final ConcurrentLinkedQueue<Grant> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    
+    // 已落盘但尚未写库的水滴，用于返回给用户的余额展示
+    private final ConcurrentHashMap<Long, Long> pendingDrops = new ConcurrentHashMap<>();
+    
+    private volatile long appliedSeq;
+    
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder forces = new LongAdder();
+    private final LongAdder ackTimeouts = new LongAdder();
+    private final LongAdder drainedGrants = new LongAdder();
+    private final LongAdder drainBatches = new LongAdder();
+    private final LongAdder drainFailures = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder skippedGrants = new LongAdder();
+    
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (nodeId == null || nodeId.isBlank()) {
+            throw new IllegalStateException("reward-journal.node-id must be configured");
+        }
+        warnForeignJournals();
+        List<Long> checkpoint = jdbcTemplate.queryForList(CHECKPOINT_SQL, Long.class, nodeId);
+        appliedSeq = checkpoint.isEmpty() ? 0 : checkpoint.get(0);
+        
+        journal = new MappedJournal(Paths.get(path), "reward-" + nodeId, segmentSize);
+        for (MappedJournal.Record record : journal.open(appliedSeq)) {
+            // 重放时无法区分应答超时作废的记录，一并视为有效，同一用户同一天由写库时的占用保证只发一次
+            Grant grant = decode(record.seq(), record.payload());
+            grant.state = Grant.COMMITTED;
+            enqueue(grant);
+            replayed.increment();
+        }
+        log.info("Reward journal opened at {}, checkpoint {}, {} grants to replay",
+                path, appliedSeq, replayed.sum());
+        
+        running = true;
+        flusher = new Thread(this::flushLoop, "reward-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+    
+    // 在请求线程上等待组提交落盘，期间不持有数据库连接；超时时记录作废并抛出异常，调用方可归还当日签到
+    public void grantCheckin(Long userId, LocalDate date, int drops, String description) {
+        if (!enabled) {
+            throw new IllegalStateException("Reward journal is disabled");
+        }
+        if (drops < 0) {
+            throw new IllegalArgumentException("Reward journal only accepts credits");
+        }
+        Grant grant = append(userId, date, drops, description);
+        try {
+            awaitDurable(grant.getSeq());
+        } catch (RuntimeException e) {
+            grant.state = Grant.ROLLED_BACK;
+            throw e;
+        }
+        grant.state = Grant.COMMITTED;
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public long getPendingDrops(Long userId) {
+        return pendingDrops.getOrDefault(userId, 0L);
+    }
+    
+    // 批量写库：按用户汇总后一条 UPDATE，流水一次写入，检查点同事务推进
+    @Scheduled(fixedDelayString = "${reward-journal.drain-interval:200}")
+    public synchronized void drain() {
+        if (!enabled) {
+            return;
+        }
+        long durable = journal.getDurableSeq();
+        while (true) {
+            // 只取已落盘且已应答或作废的连续前缀，检查点才能单调推进
+            List<Grant> batch = new ArrayList<>();
+            for (Grant grant : pending) {
+                if (grant.getSeq() > durable || grant.state == Grant.PENDING || batch.size() >= drainBatchSize) {
+                    break;
+                }
+                batch.add(grant);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                applyBatch(batch);
+            } catch (Exception e) {
+                drainFailures.increment();
+                log.warn("Failed to apply {} reward journal grants, will retry", batch.size(), e);
+                return;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                pending.poll();
+            }
+            pendingCount.addAndGet(-batch.size());
+            for (Grant grant : batch) {
+                if (grant.getDrops() != 0) {
+                    pendingDrops.computeIfPresent(grant.getUserId(),
+                            (k, v) -> v - grant.getDrops() == 0 ? null : v - grant.getDrops());
+                }
+            }
+            appliedSeq = batch.get(batch.size() - 1).getSeq();
+            drainedGrants.add(batch.size());
+            drainBatches.increment();
+            try {
+                journal.deleteSegmentsUpTo(appliedSeq);
+            } catch (IOException e) {
+                log.warn("Failed to delete applied reward journal segments", e);
+            }
+            if (batch.size() < drainBatchSize) {
+                return;
+            }
+        }
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        if (!enabled) {
+            return stats;
+        }
+        Grant oldest = pending.peek();
+        long lastSeq = journal.getLastSeq();
+        long durable = journal.getDurableSeq();
+        long forceCount = forces.sum();
+        stats.put("nodeId", nodeId);
+        stats.put("lastSeq", lastSeq);
+        stats.put("durableSeq", durable);
+        stats.put("appliedSeq", appliedSeq);
+        stats.put("unflushedRecords", lastSeq - durable);
+        stats.put("pendingGrants", pendingCount.get());
+        stats.put("lagMillis", oldest == null ? 0 : System.currentTimeMillis() - oldest.getCreatedAtMillis());
+        stats.put("appended", appended.sum());
+        stats.put("forces", forceCount);
+        stats.put("avgRecordsPerForce", forceCount == 0 ? 0 : (double) appended.sum() / forceCount);
+        stats.put("ackTimeouts", ackTimeouts.sum());
+        stats.put("drainedGrants", drainedGrants.sum());
+        stats.put("drainBatches", drainBatches.sum());
+        stats.put("drainFailures", drainFailures.sum());
+        stats.put("skippedGrants", skippedGrants.sum());
+        stats.put("replayedOnStartup", replayed.sum());
+        stats.put("segments", journal.getSegmentCount());
+        stats.put("segmentBytes", journal.getBytesOnDisk());
+        return stats;
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        flusher.interrupt();
+        try {
+            flusher.join(ackTimeoutMillis);
+            journal.force();
+            drain();
+            journal.close();
+        } catch (Exception e) {
+            log.warn("Reward journal did not shut down cleanly, pending grants will be replayed", e);
+        }
+    }
+    
+    private Grant append(Long userId, LocalDate date, int drops, String description) {
+        Grant grant = new Grant(0, userId, date.toEpochDay(), drops, description, System.currentTimeMillis());
+        try {
+            // 入队与分配序号在同一把锁内，保证队列按序号有序
+            synchronized (journal) {
+                grant.seq = journal.append(encode(grant));
+                enqueue(grant);
+            }
+        } catch (IOException e) {
+            log.error("Failed to append reward for user {}", userId, e);
+            throw new ServiceBusyException();
+        }
+        appended.increment();
+        synchronized (durableMonitor) {
+            durableMonitor.notifyAll();
+        }
+        return grant;
+    }
+    
+    private void enqueue(Grant grant) {
+        pending.add(grant);
+        pendingCount.incrementAndGet();
+        if (grant.getDrops() != 0) {
+            pendingDrops.merge(grant.getUserId(), (long) grant.getDrops(), Long::sum);
+        }
+    }
+    
+    private void awaitDurable(long seq) {
+        long deadline = System.currentTimeMillis() + ackTimeoutMillis;
+        synchronized (durableMonitor) {
+            while (journal.getDurableSeq() < seq) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    // 记录由调用方置为作废，之后即使落盘也不会在本次运行中写库
+                    ackTimeouts.increment();
+                    throw new ServiceBusyException();
+                }
+                try {
+                    durableMonitor.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ServiceBusyException();
+                }
+            }
+        }
+    }
+    
+    // 组提交：一次 force 覆盖上一次 force 期间追加的所有记录
+    private void flushLoop() {
+        while (running) {
+            try {
+                synchronized (durableMonitor) {
+                    while (running && journal.getLastSeq() == journal.getDurableSeq()) {
+                        durableMonitor.wait();
+                    }
+                }
+                journal.force();
+                forces.increment();
+                synchronized (durableMonitor) {
+                    durableMonitor.notifyAll();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Failed to force reward journal", e);
+            }
+        }
+    }
+    
+    private void applyBatch(List<Grant> batch) {
+        // 同一用户同一天只有最后一条可能已应答 (之前的都已超时作废后重试)，重放时状态未知，因此后写的覆盖先写的；
+        // 按 (用户, 日期) 排序，与其它批量写入保持相同的加锁顺序
+        TreeMap<ClaimKey, Grant> byDay = new TreeMap<>();
+        for (Grant grant : batch) {
+            if (grant.state == Grant.COMMITTED) {
+                byDay.put(new ClaimKey(grant.getUserId(), grant.getEpochDay()), grant);
+            }
+        }
+        long lastSeq = batch.get(batch.size() - 1).getSeq();
+        Integer grantedCount = transactionTemplate.execute(status -> {
+            Map<Grant, Long> granted = new LinkedHashMap<>();
+            if (!byDay.isEmpty()) {
+                StringJoiner userIds = new StringJoiner(",", "{", "}");
+                StringJoiner dates = new StringJoiner(",", "{", "}");
+                StringJoiner drops = new StringJoiner(",", "{", "}");
+                for (Grant grant : byDay.values()) {
+                    userIds.add(grant.getUserId().toString());
+                    dates.add(LocalDate.ofEpochDay(grant.getEpochDay()).toString());
+                    drops.add(Integer.toString(grant.getDrops()));
+                }
+                jdbcTemplate.query(CLAIM_BATCH_SQL, rs -> {
+                    Grant grant = byDay.get(new ClaimKey(rs.getLong("user_id"),
+                            rs.getDate("date").toLocalDate().toEpochDay()));
+                    granted.put(grant, rs.getLong("id"));
+                }, userIds.toString(), dates.toString(), drops.toString());
+            }
+            Map<Long, long[]> totals = new TreeMap<>();
+            for (Grant grant : granted.keySet()) {
+                totals.computeIfAbsent(grant.getUserId(), k -> new long[2])[0] += grant.getDrops();
+            }
+            transactionService.applyCredits(totals);
+            List<Transaction> entries = new ArrayList<>(granted.size());
+            granted.forEach((grant, logId) -> {
+                Transaction entry = new Transaction();
+                entry.setUserId(grant.getUserId());
+                entry.setType(Transaction.TransactionType.CHECKIN);
+                entry.setChangeDrops(grant.getDrops());
+                entry.setChangeLightning(0);
+                entry.setRelatedId(logId);
+                entry.setDescription(grant.getDescription());
+                entry.setCreatedAt(LocalDateTime.ofInstant(
+                        Instant.ofEpochMilli(grant.getCreatedAtMillis()), ZoneId.systemDefault()));
+                entries.add(entry);
+            });
+            ledgerAppender.appendAll(entries);
+            jdbcTemplate.update(SAVE_CHECKPOINT_SQL, nodeId, lastSeq);
+            return granted.size();
+        });
+        skippedGrants.add(batch.size() - (grantedCount != null ? grantedCount : 0));
+    }
+    
+    // 目录里其它节点 id 的日志不会被本节点重放，多半是节点 id 变过，需要人工用原 id 启动一次排空
+    private void warnForeignJournals() throws IOException {
+        Path directory = Paths.get(path);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        String own = "reward-" + nodeId + "-";
+        try (Stream<Path> list = Files.list(directory)) {
+            List<String> foreign = list.map(p -> p.getFileName().toString())
+                    .filter(name -> name.startsWith("reward-") && name.endsWith(".log") && !name.startsWith(own))
+                    .sorted()
+                    .toList();
+            if (!foreign.isEmpty()) {
+                log.error("Reward journal directory {} holds segments of other node ids that will not be replayed " +
+                        "by node {}: {}", directory, nodeId, foreign);
+            }
+        }
+    }
+    
+    private static byte[] encode(Grant grant) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(grant.getUserId());
+            out.writeLong(grant.getEpochDay());
+            out.writeInt(grant.getDrops());
+            out.writeBoolean(grant.getDescription() != null);
+            out.writeUTF(grant.getDescription() != null ? grant.getDescription() : "");
+            out.writeLong(grant.getCreatedAtMillis());
+        }
+        return bytes.toByteArray();
+    }
+    
+    private static Grant decode(long seq, byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            long userId = in.readLong();
+            long epochDay = in.readLong();
+            int drops = in.readInt();
+            boolean hasDescription = in.readBoolean();
+            String description = in.readUTF();
+            long createdAtMillis = in.readLong();
+            return new Grant(seq, userId, epochDay, drops, hasDescription ? description : null, createdAtMillis);
+        }
+    }
+    
+    private record ClaimKey(long userId, long epochDay) implements Comparable<ClaimKey> {
+        
+        @Override
+        public int compareTo(ClaimKey other) {
+            int byUser = Long.compare(userId, other.userId);
+            return byUser != 0 ? byUser : Long.compare(epochDay, other.epochDay);
+        }
+    }
+    
+    @Getter
+    @AllArgsConstructor
+    private static class Grant {
+        
+        private static final int PENDING = 0;
+        private static final int COMMITTED = 1;
+        private static final int ROLLED_BACK = 2;
+        
+        private long seq;
+        private final Long userId;
+        private final long epochDay;
+        private final int drops;
+        private final String description;
+        private final long createdAtMillis;
+        private volatile int state;
+        
+        private Grant(long seq, Long userId, long epochDay, int drops, String description, long createdAtMillis) {
+            this(seq, userId, epochDay, drops, description, createdAtMillis, PENDING);
+        }
+    }
+}
@@ -1,71 +1,108 @@
 package com.workshop.service;
 
-import com.workshop.entity.SystemConfig;
 import com.workshop.repository.SystemConfigRepository;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class SystemConfigService {
     
+    // 整表内容的摘要，任意节点修改配置后下一次轮询即可感知
+    private static final String FINGERPRINT_SQL =
+            "SELECT md5(COALESCE(string_agg(key || '=' || COALESCE(value, ''), E'\\n' ORDER BY key), '')) " +
+            "FROM system_configs";
+    
     private final SystemConfigRepository systemConfigRepository;
+    private final JdbcTemplate jdbcTemplate;
+    
+    private final AtomicLong versionCounter = new AtomicLong();
+    private volatile SystemConfigSnapshot snapshot = SystemConfigSnapshot.empty();
+    
+    @PostConstruct
+    public void init() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.error("Failed to load system configs, using defaults until next refresh", e);
+        }
+    }
+    
     public boolean isRegistrationEnabled() {
-        return getBooleanConfig("registration_enabled", true);
+        return snapshot.getBoolean("registration_enabled", true);
     }
     
     public boolean isLoginEnabled() {
-        return getBooleanConfig("login_enabled", true);
+        return snapshot.getBoolean("login_enabled", true);
     }
     
     public boolean isEmailDomainAllowed(String domain) {
-        try {
-            String value = getConfig("allowed_email_domains", "");
-            if (value.isEmpty()) {
-                return false;
-            }
-            // 使用逗号分隔字符串并去除空格
-            String[] domains = value.split(",");
-            for (String d : domains) {
-                if (d.trim().equalsIgnoreCase(domain)) {
-                    return true;
-                }
-            }
-            return false;
-        } catch (Exception e) {
-            return false;
-        }
+        return snapshot.isEmailDomainAllowed(domain);
     }
     
     public int getDailyIpRegistrationLimit() {
-        return getIntConfig("daily_ip_registration_limit", 3);
+        return snapshot.getInt("daily_ip_registration_limit", 3);
     }
     
     public int getCheckinFixedDrops() {
-        return getIntConfig("checkin_fixed_drops", 5);
+        return snapshot.getInt("checkin_fixed_drops", 5);
     }
     
     public boolean isCheckinRandomEnabled() {
-        return getBooleanConfig("checkin_random_enabled", true);
+        return snapshot.getBoolean("checkin_random_enabled", true);
+    }
+    
+    public LevelCurve getLevelCurve() {
+        return snapshot.getLevelCurve();
+    }
+    
+    public int getRateLimitPerMinute(String key, int defaultValue) {
+        return snapshot.getInt(key, defaultValue);
     }
     
-    private String getConfig(String key, String defaultValue) {
-        return systemConfigRepository.findById(key)
-                .map(SystemConfig::getValue)
-                .orElse(defaultValue);
+    public SystemConfigSnapshot getSnapshot() {
+        return snapshot;
     }
     
-    private boolean getBooleanConfig(String key, boolean defaultValue) {
-        String value = getConfig(key, String.valueOf(defaultValue));
-        return Boolean.parseBoolean(value);
+    // 重新加载整张表并替换快照
+    public synchronized void refresh() {
+        String fingerprint = loadFingerprint();
+        snapshot = new SystemConfigSnapshot(versionCounter.incrementAndGet(), fingerprint, systemConfigRepository.findAll());
+        log.info("Loaded system config snapshot v{} with {} entries", snapshot.getVersion(), snapshot.size());
     }
     
-    private int getIntConfig(String key, int defaultValue) {
-        String value = getConfig(key, String.valueOf(defaultValue));
+    @Scheduled(fixedDelayString = "${system-config.refresh-interval:1000}")
+    public void refreshIfChanged() {
         try {
-            return Integer.parseInt(value);
-        } catch (NumberFormatException e) {
-            return defaultValue;
+            if (!loadFingerprint().equals(snapshot.getFingerprint())) {
+                refresh();
+            }
+        } catch (Exception e) {
+            log.warn("Failed to check system config changes", e);
         }
     }
+    
+    public Map<String, Object> getStats() {
+        SystemConfigSnapshot current = snapshot;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("version", current.getVersion());
+        stats.put("fingerprint", current.getFingerprint());
+        stats.put("entries", current.size());
+        stats.put("levelThresholds", current.getLevelCurve().toSqlArray());
+        return stats;
+    }
+    
+    private String loadFingerprint() {
+        String fingerprint = jdbcTemplate.queryForObject(FINGERPRINT_SQL, String.class);
+        return fingerprint != null ? fingerprint : "";
+    }
 }
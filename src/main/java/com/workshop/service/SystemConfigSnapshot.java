@@ -0,0 +1,89 @@
+package com.workshop.service;
+
+import com.workshop.entity.SystemConfig;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// system_configs 的不可变快照，取值在加载时预先解析
+public class SystemConfigSnapshot {
+    
+    @Getter
+    private final long version;
+    
+    @Getter
+    private final String fingerprint;
+    
+    private final Map<String, String> values;
+    private final Map<String, Integer> intValues;
+    private final Set<String> allowedEmailDomains;
+    
+    @Getter
+    private final LevelCurve levelCurve;
+    
+    public SystemConfigSnapshot(long version, String fingerprint, List<SystemConfig> configs) {
+        this.version = version;
+        this.fingerprint = fingerprint;
+        
+        Map<String, String> raw = new HashMap<>();
+        Map<String, Integer> ints = new HashMap<>();
+        for (SystemConfig config : configs) {
+            if (config.getValue() == null) {
+                continue;
+            }
+            raw.put(config.getKey(), config.getValue());
+            try {
+                ints.put(config.getKey(), Integer.parseInt(config.getValue().trim()));
+            } catch (NumberFormatException ignored) {
+                // 非数字配置
+            }
+        }
+        this.values = Collections.unmodifiableMap(raw);
+        this.intValues = Collections.unmodifiableMap(ints);
+        
+        Set<String> domains = new HashSet<>();
+        String domainList = raw.getOrDefault("allowed_email_domains", "");
+        for (String d : domainList.split(",")) {
+            String domain = d.trim().toLowerCase(Locale.ROOT);
+            if (!domain.isEmpty()) {
+                domains.add(domain);
+            }
+        }
+        this.allowedEmailDomains = Collections.unmodifiableSet(domains);
+        
+        // 未配置或格式错误时使用默认曲线
+        LevelCurve curve = LevelCurve.parse(raw.get("level_thresholds"));
+        this.levelCurve = curve != null ? curve : LevelCurve.DEFAULT;
+    }
+    
+    public static SystemConfigSnapshot empty() {
+        return new SystemConfigSnapshot(0, "", List.of());
+    }
+    
+    public String getString(String key, String defaultValue) {
+        return values.getOrDefault(key, defaultValue);
+    }
+    
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = values.get(key);
+        return value != null ? Boolean.parseBoolean(value.trim()) : defaultValue;
+    }
+    
+    public int getInt(String key, int defaultValue) {
+        return intValues.getOrDefault(key, defaultValue);
+    }
+    
+    public boolean isEmailDomainAllowed(String domain) {
+        return domain != null && allowedEmailDomains.contains(domain.toLowerCase(Locale.ROOT));
+    }
+    
+    public int size() {
+        return values.size();
+    }
+}
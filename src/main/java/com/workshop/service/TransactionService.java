@@ -1,89 +1,254 @@
 package com.workshop.service;
 
 import com.workshop.entity.Transaction;
-import com.workshop.entity.User;
+import com.workshop.dto.transaction.TransactionHistoryResponse;
+import com.workshop.dto.transaction.TransactionResponse;
 import com.workshop.exception.BusinessException;
 import com.workshop.repository.TransactionRepository;
 import com.workshop.repository.UserRepository;
+import com.workshop.util.CursorCodec;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+
 @Service
 @RequiredArgsConstructor
 public class TransactionService {
     
+    private static final int MAX_HISTORY_PAGE_SIZE = 100;
+    
+    // 余额变更均为单条原子 UPDATE，不再读出实体后整行回写
+    private static final String ADD_DROPS_SQL =
+            "UPDATE users SET drops = drops + ? WHERE id = ? RETURNING drops";
+    
+    private static final String DEDUCT_DROPS_SQL =
+            "UPDATE users SET drops = drops - ? WHERE id = ? AND drops >= ? RETURNING drops";
+    
+    private static final String HOT_BALANCE_SQL =
+            "SELECT drops + (SELECT COALESCE(SUM(drops), 0) FROM balance_shards WHERE user_id = ?) " +
+            "FROM users WHERE id = ?";
+    
+    // 等级只升不降：新等级 = 阈值不超过新闪电数的最高等级，width_bucket 对有序阈值数组二分查找；
+    // LV0 须通过入站考试才能升到 LV1，闪电不会让 LV0 用户升级
+    private static final String ADD_LIGHTNING_SQL =
+            "UPDATE users SET lightning = lightning + ?, " +
+            "level = CASE WHEN level = 0 THEN 0 " +
+            "ELSE GREATEST(level, width_bucket(users.lightning + ?, CAST(? AS int[])) - 1) END " +
+            "WHERE id = ? RETURNING lightning";
+    
+    // 批量记账：每个用户汇总为一行，一条语句完成；余额不足的行不更新也不返回
+    private static final String APPLY_TOTALS_SQL =
+            "UPDATE users u SET drops = u.drops + c.drops, lightning = u.lightning + c.lightning, " +
+            "level = CASE WHEN u.level = 0 THEN 0 " +
+            "ELSE GREATEST(u.level, width_bucket(CAST(u.lightning + c.lightning AS int), CAST(? AS int[])) - 1) END " +
+            "FROM unnest(CAST(? AS bigint[]), CAST(? AS bigint[]), CAST(? AS bigint[])) AS c(user_id, drops, lightning) " +
+            "WHERE u.id = c.user_id AND u.drops + c.drops >= 0 AND u.lightning + c.lightning >= 0 RETURNING u.id";
+    
+    // 多用户记账前按 id 顺序加锁，交叉邀请等并发场景下加锁顺序一致，不会死锁
+    private static final String LOCK_USERS_SQL =
+            "SELECT id FROM users WHERE id = ANY(CAST(? AS bigint[])) ORDER BY id FOR UPDATE";
+    
+    private final LedgerAppender ledgerAppender;
     private final TransactionRepository transactionRepository;
+    private final LedgerArchiver ledgerArchiver;
+    private final HotAccountService hotAccountService;
     private final UserRepository userRepository;
+    private final SystemConfigService systemConfigService;
+    private final JdbcTemplate jdbcTemplate;
     
     @Transactional
-    public void addDrops(Long userId, Integer amount, String type, Long relatedId, String description) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new BusinessException("用户不存在"));
+    public int addDrops(Long userId, Integer amount, String type, Long relatedId, String description) {
+        // 热点账户入账写入分片槽位，不锁 users 行
+        List<Integer> result;
+        if (amount > 0 && hotAccountService.isHot(userId)) {
+            hotAccountService.credit(userId, amount);
+            result = jdbcTemplate.queryForList(HOT_BALANCE_SQL, Integer.class, userId, userId);
+        } else {
+            result = jdbcTemplate.queryForList(ADD_DROPS_SQL, Integer.class, amount, userId);
+        }
+        if (result.isEmpty()) {
+            throw new BusinessException("用户不存在");
+        }
         
-        user.setDrops(user.getDrops() + amount);
-        userRepository.save(user);
+        ledgerAppender.append(userId, Transaction.TransactionType.valueOf(type.toUpperCase()),
+                amount, 0, relatedId, description);
         
-        Transaction transaction = new Transaction();
-        transaction.setUserId(userId);
-        transaction.setType(Transaction.TransactionType.valueOf(type.toUpperCase()));
-        transaction.setChangeDrops(amount);
-        transaction.setRelatedId(relatedId);
-        transaction.setDescription(description);
-        transactionRepository.save(transaction);
+        return result.get(0);
     }
     
     @Transactional
-    public void deductDrops(Long userId, Integer amount, String type, Long relatedId, String description) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new BusinessException("用户不存在"));
-        
-        if (user.getDrops() < amount) {
+    public int deductDrops(Long userId, Integer amount, String type, Long relatedId, String description) {
+        // 先把分片合并回 users，扣减判断始终基于完整余额
+        if (hotAccountService.isHot(userId)) {
+            hotAccountService.fold(userId);
+        }
+        List<Integer> result = jdbcTemplate.queryForList(DEDUCT_DROPS_SQL, Integer.class, amount, userId, amount);
+        if (result.isEmpty()) {
+            if (!userRepository.existsById(userId)) {
+                throw new BusinessException("用户不存在");
+            }
             throw new BusinessException("水滴不足");
         }
         
-        user.setDrops(user.getDrops() - amount);
-        userRepository.save(user);
+        ledgerAppender.append(userId, Transaction.TransactionType.valueOf(type.toUpperCase()),
+                -amount, 0, relatedId, description);
+        
+        return result.get(0);
+    }
+    
+    @Transactional
+    public int addLightning(Long userId, Integer amount, String type, Long relatedId, String description) {
+        List<Integer> result = jdbcTemplate.queryForList(
+                ADD_LIGHTNING_SQL, Integer.class, amount, amount, systemConfigService.getLevelCurve().toSqlArray(), userId);
+        if (result.isEmpty()) {
+            throw new BusinessException("用户不存在");
+        }
+        
+        ledgerAppender.append(userId, Transaction.TransactionType.valueOf(type.toUpperCase()),
+                0, amount, relatedId, description);
         
-        Transaction transaction = new Transaction();
-        transaction.setUserId(userId);
-        transaction.setType(Transaction.TransactionType.valueOf(type.toUpperCase()));
-        transaction.setChangeDrops(-amount);
-        transaction.setRelatedId(relatedId);
-        transaction.setDescription(description);
-        transactionRepository.save(transaction);
+        return result.get(0);
+    }
+    
+    // totals: userId -> {水滴, 闪电}，返回实际入账的用户 id，不写流水。
+    // 与 post 一致先按 id 顺序锁住 users 行，UPDATE ... FROM unnest 按执行计划的顺序加锁
+    @Transactional
+    public Set<Long> applyCredits(Map<Long, long[]> totals) {
+        if (totals.isEmpty()) {
+            return Set.of();
+        }
+        StringJoiner userIds = new StringJoiner(",", "{", "}");
+        totals.keySet().forEach(id -> userIds.add(id.toString()));
+        jdbcTemplate.queryForList(LOCK_USERS_SQL, Long.class, userIds.toString());
+        return applyTotals(totals);
     }
     
+    // 多腿记账：所有腿在同一事务内生效，任一用户不存在或余额不足则整体回滚
     @Transactional
-    public void addLightning(Long userId, Integer amount, String type, Long relatedId, String description) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new BusinessException("用户不存在"));
+    public void post(List<PostingLeg> legs) {
+        if (legs.isEmpty()) {
+            return;
+        }
+        // userId -> {水滴, 闪电}
+        Map<Long, long[]> totals = new TreeMap<>();
+        for (PostingLeg leg : legs) {
+            long[] total = totals.computeIfAbsent(leg.userId(), k -> new long[2]);
+            total[leg.currency() == PostingLeg.Currency.DROPS ? 0 : 1] += leg.amount();
+        }
         
-        user.setLightning(user.getLightning() + amount);
-        checkAndUpgradeLevel(user);
-        userRepository.save(user);
+        // 热点账户只入账水滴时写入分片，不锁 users 行
+        Map<Long, Long> hotCredits = new TreeMap<>();
+        for (Iterator<Map.Entry<Long, long[]>> it = totals.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, long[]> entry = it.next();
+            if (entry.getValue()[0] > 0 && entry.getValue()[1] == 0 && hotAccountService.isHot(entry.getKey())) {
+                hotCredits.put(entry.getKey(), entry.getValue()[0]);
+                it.remove();
+            }
+        }
+        
+        if (!totals.isEmpty()) {
+            StringJoiner userIds = new StringJoiner(",", "{", "}");
+            totals.keySet().forEach(id -> userIds.add(id.toString()));
+            List<Long> locked = jdbcTemplate.queryForList(LOCK_USERS_SQL, Long.class, userIds.toString());
+            if (locked.size() < totals.size()) {
+                throw new BusinessException("用户不存在");
+            }
+            totals.forEach((userId, total) -> {
+                if (total[0] < 0 && hotAccountService.isHot(userId)) {
+                    hotAccountService.fold(userId);
+                }
+            });
+            if (applyTotals(totals).size() < totals.size()) {
+                throw new BusinessException("余额不足");
+            }
+        }
+        hotCredits.forEach((userId, amount) -> hotAccountService.credit(userId, amount.intValue()));
         
-        Transaction transaction = new Transaction();
-        transaction.setUserId(userId);
-        transaction.setType(Transaction.TransactionType.valueOf(type.toUpperCase()));
-        transaction.setChangeLightning(amount);
-        transaction.setRelatedId(relatedId);
-        transaction.setDescription(description);
-        transactionRepository.save(transaction);
+        // 流水在提交前合并为一条多行 INSERT
+        for (PostingLeg leg : legs) {
+            boolean drops = leg.currency() == PostingLeg.Currency.DROPS;
+            ledgerAppender.append(leg.userId(), leg.type(), drops ? leg.amount() : 0, drops ? 0 : leg.amount(),
+                    leg.relatedId(), leg.description());
+        }
+    }
+    
+    private Set<Long> applyTotals(Map<Long, long[]> totals) {
+        StringJoiner userIds = new StringJoiner(",", "{", "}");
+        StringJoiner drops = new StringJoiner(",", "{", "}");
+        StringJoiner lightning = new StringJoiner(",", "{", "}");
+        for (Map.Entry<Long, long[]> entry : totals.entrySet()) {
+            userIds.add(entry.getKey().toString());
+            drops.add(Long.toString(entry.getValue()[0]));
+            lightning.add(Long.toString(entry.getValue()[1]));
+        }
+        return new HashSet<>(jdbcTemplate.queryForList(APPLY_TOTALS_SQL, Long.class,
+                systemConfigService.getLevelCurve().toSqlArray(), userIds.toString(), drops.toString(), lightning.toString()));
     }
     
-    private void checkAndUpgradeLevel(User user) {
-        int currentLevel = user.getLevel();
-        int currentLightning = user.getLightning();
+    // 键集分页：cursor 为上一页最后一条的 (created_at, id)，为空时从最新开始
+    @Transactional(readOnly = true)
+    public TransactionHistoryResponse getHistory(Long userId, String cursor, String type, int size) {
+        Transaction.TransactionType transactionType = null;
+        if (type != null && !type.isBlank()) {
+            try {
+                transactionType = Transaction.TransactionType.valueOf(type.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new BusinessException("无效的流水类型");
+            }
+        }
+        Pageable pageable = PageRequest.of(0, Math.max(1, Math.min(size, MAX_HISTORY_PAGE_SIZE)));
         
-        int[] thresholds = {0, 0, 300, 800, 1500, 3000, 5000, 8000, 15000, 30000};
+        CursorCodec.Cursor position = cursor == null || cursor.isBlank() ? null : CursorCodec.decode(cursor);
+        Slice<Transaction> slice;
+        if (position == null) {
+            slice = transactionType == null
+                    ? transactionRepository.findLatest(userId, pageable)
+                    : transactionRepository.findLatestByType(userId, transactionType, pageable);
+        } else {
+            slice = transactionType == null
+                    ? transactionRepository.findBefore(userId, position.createdAt(), position.id(), pageable)
+                    : transactionRepository.findBeforeByType(
+                            userId, transactionType, position.createdAt(), position.id(), pageable);
+        }
         
-        for (int level = currentLevel + 1; level <= 9; level++) {
-            if (currentLightning >= thresholds[level]) {
-                user.setLevel(level);
-            } else {
-                break;
+        // 在线分区读完后接着读归档段，游标格式不变
+        List<Transaction> rows = new ArrayList<>(slice.getContent());
+        boolean hasMore = slice.hasNext();
+        if (!hasMore) {
+            int limit = pageable.getPageSize();
+            Transaction last = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+            rows.addAll(ledgerArchiver.findHistory(userId, transactionType,
+                    last != null ? last.getCreatedAt() : position != null ? position.createdAt() : null,
+                    last != null ? last.getId() : position != null ? position.id() : null,
+                    limit - rows.size() + 1));
+            hasMore = rows.size() > limit;
+            if (hasMore) {
+                rows = rows.subList(0, limit);
             }
         }
+        
+        List<TransactionResponse> items = rows.stream()
+                .map(t -> new TransactionResponse(t.getId(), t.getType().name(), t.getChangeDrops(),
+                        t.getChangeLightning(), t.getRelatedId(), t.getDescription(), t.getCreatedAt()))
+                .toList();
+        String nextCursor = null;
+        if (hasMore && !items.isEmpty()) {
+            TransactionResponse last = items.get(items.size() - 1);
+            nextCursor = CursorCodec.encode(last.getCreatedAt(), last.getId());
+        }
+        return new TransactionHistoryResponse(items, nextCursor, hasMore);
     }
 }
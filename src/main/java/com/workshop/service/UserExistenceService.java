@@ -0,0 +1,226 @@
+package com.workshop.service;
+
+import com.workshop.repository.UserRepository;
+import com.workshop.util.BloomFilter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+// 用户名、邮箱的存在性布隆过滤器：判定不存在时直接跳过数据库，可能存在时回退到 UserRepository 查询。
+// 其它节点的写入要到下一次追平才进入过滤器，此前的误判由唯一约束兜底，所以只用于这两个有唯一约束的字段；
+// 邀请码判定不存在就会拒绝注册，不能容忍这种滞后，直接查库
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UserExistenceService {
+    
+    private static final int FETCH_SIZE = 1000;
+    
+    // 追平时回看的时间窗，覆盖提交晚于 updated_at 的事务
+    private static final long CATCH_UP_OVERLAP_SECONDS = 5;
+    
+    // 水位取数据库时钟 (与 updated_at 同源)，不受节点间时钟偏差影响
+    private static final String DB_NOW_SQL = "SELECT LOCALTIMESTAMP";
+    
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    
+    @Value("${existence-filter.expected-users:1000000}")
+    private long expectedUsers;
+    
+    @Value("${existence-filter.fpp:0.01}")
+    private double fpp;
+    
+    private final ExistenceFilter usernames = new ExistenceFilter("username");
+    private final ExistenceFilter emails = new ExistenceFilter("email");
+    
+    private volatile LocalDateTime watermark;
+    private volatile boolean ready = false;
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.error("Failed to warm up user existence filters, falling back to database", e);
+        }
+    }
+    
+    public boolean usernameExists(String username) {
+        return usernames.exists(username, userRepository::existsByUsername);
+    }
+    
+    public boolean emailExists(String email) {
+        return emails.exists(email, userRepository::existsByEmail);
+    }
+    
+    public void addUser(String username, String email) {
+        usernames.put(username);
+        emails.put(email);
+    }
+    
+    public void addEmail(String email) {
+        emails.put(email);
+    }
+    
+    public synchronized void rebuild() {
+        long userCount = userRepository.count();
+        long capacity = Math.max(expectedUsers, userCount * 2);
+        
+        usernames.startBuilding(capacity, fpp);
+        emails.startBuilding(capacity, fpp);
+        
+        long start = System.currentTimeMillis();
+        LocalDateTime[] polledAt = {null};
+        long loaded = streamUsers(null, polledAt, true);
+        watermark = polledAt[0];
+        
+        usernames.finishBuilding();
+        emails.finishBuilding();
+        ready = true;
+        
+        log.info("User existence filters built with {} users in {} ms", loaded, System.currentTimeMillis() - start);
+    }
+    
+    // 定时补齐其它节点新注册或改了邮箱的用户，按 updated_at 水位读取
+    @Scheduled(fixedDelayString = "${existence-filter.catch-up-interval:30000}")
+    public synchronized void catchUp() {
+        if (!ready) {
+            return;
+        }
+        LocalDateTime[] polledAt = {watermark};
+        streamUsers(watermark != null ? watermark.minusSeconds(CATCH_UP_OVERLAP_SECONDS) : null, polledAt, false);
+        watermark = polledAt[0];
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ready", ready);
+        stats.put("watermark", watermark);
+        stats.put(usernames.name, usernames.getStats());
+        stats.put(emails.name, emails.getStats());
+        return stats;
+    }
+    
+    // polledAt 返回本次读取所在事务开始时的数据库时间，作为下一次追平的水位
+    private long streamUsers(LocalDateTime since, LocalDateTime[] polledAt, boolean building) {
+        LongAdder count = new LongAdder();
+        transactionTemplate.executeWithoutResult(status -> {
+            polledAt[0] = jdbcTemplate.queryForObject(DB_NOW_SQL, Timestamp.class).toLocalDateTime();
+            jdbcTemplate.query(
+                    con -> {
+                        PreparedStatement ps = con.prepareStatement(
+                                "SELECT username, email FROM users WHERE updated_at >= ?");
+                        ps.setTimestamp(1, Timestamp.valueOf(since != null ? since : LocalDateTime.of(1970, 1, 1, 0, 0)));
+                        ps.setFetchSize(FETCH_SIZE);
+                        return ps;
+                    },
+                    rs -> {
+                        String username = rs.getString("username");
+                        String email = rs.getString("email");
+                        if (building) {
+                            usernames.putBuilding(username);
+                            emails.putBuilding(email);
+                        } else {
+                            addUser(username, email);
+                        }
+                        count.increment();
+                    }
+            );
+        });
+        return count.sum();
+    }
+    
+    private class ExistenceFilter {
+        
+        private final String name;
+        private volatile BloomFilter current;
+        private volatile BloomFilter building;
+        
+        private final LongAdder negatives = new LongAdder();
+        private final LongAdder positives = new LongAdder();
+        private final LongAdder falsePositives = new LongAdder();
+        private final LongAdder fallbacks = new LongAdder();
+        
+        ExistenceFilter(String name) {
+            this.name = name;
+        }
+        
+        boolean exists(String value, Predicate<String> databaseCheck) {
+            BloomFilter filter = current;
+            if (!ready || filter == null) {
+                fallbacks.increment();
+                return databaseCheck.test(value);
+            }
+            if (!filter.mightContain(value)) {
+                negatives.increment();
+                return false;
+            }
+            positives.increment();
+            boolean exists = databaseCheck.test(value);
+            if (!exists) {
+                falsePositives.increment();
+            }
+            return exists;
+        }
+        
+        void put(String value) {
+            BloomFilter filter = current;
+            if (filter != null) {
+                filter.put(value);
+            }
+            BloomFilter next = building;
+            if (next != null) {
+                next.put(value);
+            }
+        }
+        
+        void startBuilding(long capacity, double fpp) {
+            building = BloomFilter.create(capacity, fpp);
+        }
+        
+        void putBuilding(String value) {
+            building.put(value);
+        }
+        
+        void finishBuilding() {
+            current = building;
+            building = null;
+        }
+        
+        Map<String, Object> getStats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            BloomFilter filter = current;
+            if (filter != null) {
+                stats.put("bitCount", filter.getBitCount());
+                stats.put("hashCount", filter.getHashCount());
+                stats.put("insertions", filter.getInsertions());
+                stats.put("memoryBytes", filter.getMemoryBytes());
+                stats.put("estimatedFpp", filter.getEstimatedFpp());
+            }
+            long fp = falsePositives.sum();
+            long tn = negatives.sum();
+            stats.put("negatives", tn);
+            stats.put("positives", positives.sum());
+            stats.put("falsePositives", fp);
+            stats.put("observedFpp", fp + tn == 0 ? 0.0 : (double) fp / (fp + tn));
+            stats.put("databaseFallbacks", fallbacks.sum());
+            return stats;
+        }
+    }
+}
@@ -2,14 +2,18 @@ package com.workshop.service;
 
 import com.workshop.dto.user.*;
 import com.workshop.entity.User;
+import com.workshop.event.UserStatusChangedEvent;
 import com.workshop.exception.BusinessException;
 import com.workshop.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
+import java.time.LocalDateTime;
 
 @Service
 @RequiredArgsConstructor
@@ -19,6 +23,9 @@ public class UserService {
     private final PasswordEncoder passwordEncoder;
     private final SystemConfigService systemConfigService;
     private final MinioService minioService;
+    private final UserExistenceService userExistenceService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final HotAccountService hotAccountService;
     
     public UserProfileResponse getProfile(Long userId) {
         User user = userRepository.findById(userId)
@@ -74,7 +81,7 @@ public class UserService {
             throw new BusinessException("新邮箱不能与当前邮箱相同");
         }
         
-        if (userRepository.existsByEmail(request.getNewEmail())) {
+        if (userExistenceService.emailExists(request.getNewEmail())) {
             throw new BusinessException("该邮箱已被使用");
         }
         
@@ -84,7 +91,12 @@ public class UserService {
         }
         
         user.setEmail(request.getNewEmail());
-        userRepository.save(user);
+        try {
+            userRepository.saveAndFlush(user);
+        } catch (DataIntegrityViolationException e) {
+            throw new BusinessException("该邮箱已被使用");
+        }
+        userExistenceService.addEmail(request.getNewEmail());
     }
     
     @Transactional
@@ -143,6 +155,36 @@ public class UserService {
         userRepository.save(user);
     }
     
+    @Transactional
+    public void banUser(Long userId, String reason) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new BusinessException("用户不存在"));
+        
+        if (user.getRole() == User.UserRole.ADMIN) {
+            throw new BusinessException("不能封禁管理员");
+        }
+        
+        user.setStatus(User.UserStatus.BANNED);
+        user.setBanReason(reason);
+        // 封禁前签发的 token 在解封后也不再有效
+        user.setTokensInvalidBefore(LocalDateTime.now());
+        userRepository.save(user);
+        
+        eventPublisher.publishEvent(new UserStatusChangedEvent(userId, user.getStatus(), user.getTokensInvalidBefore()));
+    }
+    
+    @Transactional
+    public void unbanUser(Long userId) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new BusinessException("用户不存在"));
+        
+        user.setStatus(User.UserStatus.ACTIVE);
+        user.setBanReason(null);
+        userRepository.save(user);
+        
+        eventPublisher.publishEvent(new UserStatusChangedEvent(userId, user.getStatus(), user.getTokensInvalidBefore()));
+    }
+    
     private UserProfileResponse mapToProfileResponse(User user) {
         UserProfileResponse response = new UserProfileResponse();
         response.setId(user.getId());
@@ -162,7 +204,7 @@ public class UserService {
         response.setRole(user.getRole().name());
         response.setLevel(user.getLevel());
         response.setLightning(user.getLightning());
-        response.setDrops(user.getDrops());
+        response.setDrops((int) (user.getDrops() + hotAccountService.getShardBalance(user.getId())));
         response.setInviteCode(user.getInviteCode());
         response.setStatus(user.getStatus().name());
         response.setCreatedAt(user.getCreatedAt());
@@ -0,0 +1,137 @@
+package com.workshop.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// 非负 long 的压缩位图：按高位分桶，每桶覆盖 65536 个连续值。
+// 桶内元素少时为有序 char 数组，超过 4096 个后转为 8KB 定长位图，稀疏和稠密的 id 段都不会浪费内存
+public class CompressedBitmap {
+    
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int BITMAP_WORDS = 1024;
+    
+    private final ConcurrentHashMap<Long, Container> containers = new ConcurrentHashMap<>();
+    private final LongAdder cardinality = new LongAdder();
+    
+    public boolean add(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        Container container = containers.computeIfAbsent(value >>> 16, k -> new Container());
+        boolean added = container.add((char) value);
+        if (added) {
+            cardinality.increment();
+        }
+        return added;
+    }
+    
+    public boolean remove(long value) {
+        if (value < 0) {
+            return false;
+        }
+        Container container = containers.get(value >>> 16);
+        boolean removed = container != null && container.remove((char) value);
+        if (removed) {
+            cardinality.decrement();
+        }
+        return removed;
+    }
+    
+    public boolean contains(long value) {
+        if (value < 0) {
+            return false;
+        }
+        Container container = containers.get(value >>> 16);
+        return container != null && container.contains((char) value);
+    }
+    
+    public long getCardinality() {
+        return cardinality.sum();
+    }
+    
+    public int getContainerCount() {
+        return containers.size();
+    }
+    
+    // 估算值：数组或位图本身加上每个桶的对象开销
+    public long getMemoryBytes() {
+        long bytes = 0;
+        for (Container container : containers.values()) {
+            bytes += container.getMemoryBytes() + 64;
+        }
+        return bytes;
+    }
+    
+    private static final class Container {
+        
+        private char[] values = new char[4];
+        private int size;
+        private long[] bits;
+        
+        synchronized boolean add(char value) {
+            if (bits != null) {
+                long mask = 1L << value;
+                long word = bits[value >>> 6];
+                if ((word & mask) != 0) {
+                    return false;
+                }
+                bits[value >>> 6] = word | mask;
+                return true;
+            }
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index >= 0) {
+                return false;
+            }
+            if (size == ARRAY_LIMIT) {
+                toBitmap();
+                return add(value);
+            }
+            int insertAt = -index - 1;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, size * 2));
+            }
+            System.arraycopy(values, insertAt, values, insertAt + 1, size - insertAt);
+            values[insertAt] = value;
+            size++;
+            return true;
+        }
+        
+        // 位图形态的桶不再转回数组
+        synchronized boolean remove(char value) {
+            if (bits != null) {
+                long mask = 1L << value;
+                long word = bits[value >>> 6];
+                bits[value >>> 6] = word & ~mask;
+                return (word & mask) != 0;
+            }
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(values, index + 1, values, index, size - index - 1);
+            size--;
+            return true;
+        }
+        
+        synchronized boolean contains(char value) {
+            if (bits != null) {
+                return (bits[value >>> 6] & (1L << value)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+        
+        synchronized long getMemoryBytes() {
+            return bits != null ? (long) bits.length * 8 : (long) values.length * 2;
+        }
+        
+        private void toBitmap() {
+            bits = new long[BITMAP_WORDS];
+            for (int i = 0; i < size; i++) {
+                bits[values[i] >>> 6] |= 1L << values[i];
+            }
+            values = null;
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.workshop.util;
+
+import com.workshop.exception.BusinessException;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+// 键集分页游标：(排序键, id) 编码为不透明的 URL 安全字符串，时间排序键按微秒存储
+public class CursorCodec {
+    
+    private static final int CURSOR_BYTES = Long.BYTES * 2;
+    
+    private CursorCodec() {
+    }
+    
+    public static String encode(LocalDateTime createdAt, long id) {
+        // 按 UTC 换算只是为了得到可逆的数值，不涉及时区语义
+        long micros = createdAt.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + createdAt.getNano() / 1_000;
+        return encode(micros, id);
+    }
+    
+    public static String encode(long key, long id) {
+        ByteBuffer buffer = ByteBuffer.allocate(CURSOR_BYTES).putLong(key).putLong(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+    
+    public static Cursor decode(String cursor) {
+        KeyCursor position = decodeKey(cursor);
+        long micros = position.key();
+        LocalDateTime createdAt = LocalDateTime.ofEpochSecond(
+                Math.floorDiv(micros, 1_000_000L), (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+        return new Cursor(createdAt, position.id());
+    }
+    
+    public static KeyCursor decodeKey(String cursor) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException("无效的分页游标");
+        }
+        if (bytes.length != CURSOR_BYTES) {
+            throw new BusinessException("无效的分页游标");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new KeyCursor(buffer.getLong(), buffer.getLong());
+    }
+    
+    public record Cursor(LocalDateTime createdAt, long id) {
+    }
+    
+    public record KeyCursor(long key, long id) {
+    }
+}
@@ -1,18 +1,83 @@
 package com.workshop.util;
 
-import java.security.SecureRandom;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
+// 将单调递增的序号通过带密钥的 Feistel 置换映射到 62^8 的邀请码空间，结果天然唯一且不可按序猜测
 public class InviteCodeGenerator {
     
     private static final String CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
     private static final int CODE_LENGTH = 8;
-    private static final SecureRandom random = new SecureRandom();
+    private static final long CODE_SPACE = pow(CHARACTERS.length(), CODE_LENGTH);
     
-    public static String generate() {
-        StringBuilder code = new StringBuilder(CODE_LENGTH);
-        for (int i = 0; i < CODE_LENGTH; i++) {
-            code.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+    private static final int HALF_BITS = 24;
+    private static final long HALF_MASK = (1L << HALF_BITS) - 1;
+    private static final int ROUNDS = 6;
+    
+    private final long[] roundKeys = new long[ROUNDS];
+    
+    public InviteCodeGenerator(String secret) {
+        byte[] digest = sha256(secret.getBytes(StandardCharsets.UTF_8));
+        ByteBuffer buffer = ByteBuffer.wrap(digest);
+        for (int i = 0; i < ROUNDS; i++) {
+            roundKeys[i] = buffer.getLong((i % 4) * Long.BYTES) + i * 0x9E3779B97F4A7C15L;
+        }
+    }
+    
+    public String encode(long sequence) {
+        if (sequence < 0 || sequence >= CODE_SPACE) {
+            throw new IllegalArgumentException("Invite code sequence out of range: " + sequence);
+        }
+        // 48 位 Feistel 置换 + cycle walking，保证结果仍落在 [0, 62^8) 内
+        long value = sequence;
+        do {
+            value = permute(value);
+        } while (value >= CODE_SPACE);
+        
+        char[] code = new char[CODE_LENGTH];
+        for (int i = CODE_LENGTH - 1; i >= 0; i--) {
+            code[i] = CHARACTERS.charAt((int) (value % CHARACTERS.length()));
+            value /= CHARACTERS.length();
+        }
+        return new String(code);
+    }
+    
+    private long permute(long value) {
+        long left = (value >>> HALF_BITS) & HALF_MASK;
+        long right = value & HALF_MASK;
+        for (int i = 0; i < ROUNDS; i++) {
+            long next = left ^ round(right, roundKeys[i]);
+            left = right;
+            right = next;
+        }
+        return (left << HALF_BITS) | right;
+    }
+    
+    private static long round(long half, long key) {
+        long h = half ^ key;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h & HALF_MASK;
+    }
+    
+    private static byte[] sha256(byte[] input) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(input);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    private static long pow(int base, int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= base;
         }
-        return code.toString();
+        return result;
     }
 }
@@ -0,0 +1,280 @@
+package com.workshop.util;
+
+import com.workshop.entity.Transaction;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// 归档流水段文件：按列存储后整体压缩。行须按 user_id 升序、同一用户内 (created_at, id) 降序排列，
+// 数值列用差值 + 变长编码，type 和 description 用字典编码
+public final class LedgerSegmentCodec {
+    
+    private static final int MAGIC = 0x4C454447; // "LEDG"
+    private static final int VERSION = 1;
+    
+    private LedgerSegmentCodec() {
+    }
+    
+    public static byte[] encode(List<Transaction> rows) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(rows.size() * 8 + 64);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(rows.size());
+            
+            Map<String, Integer> types = new HashMap<>();
+            Map<String, Integer> descriptions = new HashMap<>();
+            List<String> typeDictionary = new ArrayList<>();
+            List<String> descriptionDictionary = new ArrayList<>();
+            for (Transaction row : rows) {
+                types.computeIfAbsent(row.getType().name(), k -> {
+                    typeDictionary.add(k);
+                    return typeDictionary.size() - 1;
+                });
+                if (row.getDescription() != null) {
+                    descriptions.computeIfAbsent(row.getDescription(), k -> {
+                        descriptionDictionary.add(k);
+                        return descriptionDictionary.size() - 1;
+                    });
+                }
+            }
+            writeDictionary(out, typeDictionary);
+            writeDictionary(out, descriptionDictionary);
+            
+            long previous = 0;
+            for (Transaction row : rows) {
+                writeVarLong(out, zigzag(row.getUserId() - previous));
+                previous = row.getUserId();
+            }
+            previous = 0;
+            for (Transaction row : rows) {
+                long micros = toMicros(row.getCreatedAt());
+                writeVarLong(out, zigzag(micros - previous));
+                previous = micros;
+            }
+            previous = 0;
+            for (Transaction row : rows) {
+                writeVarLong(out, zigzag(row.getId() - previous));
+                previous = row.getId();
+            }
+            for (Transaction row : rows) {
+                writeVarLong(out, types.get(row.getType().name()));
+            }
+            for (Transaction row : rows) {
+                writeVarLong(out, zigzag(row.getChangeDrops()));
+            }
+            for (Transaction row : rows) {
+                writeVarLong(out, zigzag(row.getChangeLightning()));
+            }
+            // 0 表示 NULL
+            for (Transaction row : rows) {
+                writeVarLong(out, row.getRelatedId() == null ? 0 : zigzag(row.getRelatedId()) + 1);
+            }
+            for (Transaction row : rows) {
+                writeVarLong(out, row.getDescription() == null ? 0 : descriptions.get(row.getDescription()) + 1);
+            }
+        }
+        return bytes.toByteArray();
+    }
+    
+    public static Segment decode(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a ledger segment");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported ledger segment version: " + version);
+            }
+            int count = in.readInt();
+            List<String> types = readDictionary(in);
+            List<String> descriptions = readDictionary(in);
+            
+            Segment segment = new Segment(count, types, descriptions);
+            long previous = 0;
+            for (int i = 0; i < count; i++) {
+                previous += unzigzag(readVarLong(in));
+                segment.userIds[i] = previous;
+            }
+            previous = 0;
+            for (int i = 0; i < count; i++) {
+                previous += unzigzag(readVarLong(in));
+                segment.createdAtMicros[i] = previous;
+            }
+            previous = 0;
+            for (int i = 0; i < count; i++) {
+                previous += unzigzag(readVarLong(in));
+                segment.ids[i] = previous;
+            }
+            for (int i = 0; i < count; i++) {
+                segment.typeIndexes[i] = (int) readVarLong(in);
+            }
+            for (int i = 0; i < count; i++) {
+                segment.drops[i] = (int) unzigzag(readVarLong(in));
+            }
+            for (int i = 0; i < count; i++) {
+                segment.lightning[i] = (int) unzigzag(readVarLong(in));
+            }
+            for (int i = 0; i < count; i++) {
+                segment.relatedIds[i] = readVarLong(in);
+            }
+            for (int i = 0; i < count; i++) {
+                segment.descriptionIndexes[i] = (int) readVarLong(in);
+            }
+            return segment;
+        }
+    }
+    
+    public static long toMicros(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + time.getNano() / 1_000;
+    }
+    
+    public static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+    
+    private static void writeDictionary(DataOutputStream out, List<String> dictionary) throws IOException {
+        writeVarLong(out, dictionary.size());
+        for (String value : dictionary) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, utf8.length);
+            out.write(utf8);
+        }
+    }
+    
+    private static List<String> readDictionary(DataInputStream in) throws IOException {
+        int size = (int) readVarLong(in);
+        List<String> dictionary = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            byte[] utf8 = new byte[(int) readVarLong(in)];
+            in.readFully(utf8);
+            dictionary.add(new String(utf8, StandardCharsets.UTF_8));
+        }
+        return dictionary;
+    }
+    
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+    
+    private static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Truncated ledger segment");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in ledger segment");
+    }
+    
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+    
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    // 解码后的段：各列为原始数组，按用户二分定位
+    public static final class Segment {
+        
+        private final int size;
+        private final long[] userIds;
+        private final long[] createdAtMicros;
+        private final long[] ids;
+        private final int[] typeIndexes;
+        private final int[] drops;
+        private final int[] lightning;
+        private final long[] relatedIds;
+        private final int[] descriptionIndexes;
+        private final List<String> types;
+        private final List<String> descriptions;
+        
+        private Segment(int size, List<String> types, List<String> descriptions) {
+            this.size = size;
+            this.userIds = new long[size];
+            this.createdAtMicros = new long[size];
+            this.ids = new long[size];
+            this.typeIndexes = new int[size];
+            this.drops = new int[size];
+            this.lightning = new int[size];
+            this.relatedIds = new long[size];
+            this.descriptionIndexes = new int[size];
+            this.types = types;
+            this.descriptions = descriptions;
+        }
+        
+        public int size() {
+            return size;
+        }
+        
+        // 返回该用户在 (beforeMicros, beforeId) 之前的记录，按 (created_at, id) 降序，最多 limit 条
+        public List<Transaction> findUserRows(long userId, String type, Long beforeMicros, Long beforeId, int limit) {
+            List<Transaction> result = new ArrayList<>();
+            int i = firstIndexOf(userId);
+            for (; i < size && userIds[i] == userId && result.size() < limit; i++) {
+                if (beforeMicros != null && (createdAtMicros[i] > beforeMicros
+                        || createdAtMicros[i] == beforeMicros && ids[i] >= beforeId)) {
+                    continue;
+                }
+                String rowType = types.get(typeIndexes[i]);
+                if (type != null && !type.equals(rowType)) {
+                    continue;
+                }
+                result.add(toTransaction(i, rowType));
+            }
+            return result;
+        }
+        
+        private int firstIndexOf(long userId) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (userIds[mid] < userId) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+        
+        private Transaction toTransaction(int i, String type) {
+            Transaction transaction = new Transaction();
+            transaction.setId(ids[i]);
+            transaction.setUserId(userIds[i]);
+            transaction.setType(Transaction.TransactionType.valueOf(type));
+            transaction.setChangeDrops(drops[i]);
+            transaction.setChangeLightning(lightning[i]);
+            transaction.setRelatedId(relatedIds[i] == 0 ? null : unzigzag(relatedIds[i] - 1));
+            transaction.setDescription(descriptionIndexes[i] == 0 ? null : descriptions.get(descriptionIndexes[i] - 1));
+            transaction.setCreatedAt(fromMicros(createdAtMicros[i]));
+            return transaction;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.workshop.util;
+
+import java.util.Arrays;
+
+// long 键 -> 两个 long 累加值的开放寻址哈希表，避免 HashMap<Long, long[]> 的装箱和节点开销
+public class LongPairHashMap {
+    
+    private static final long EMPTY = Long.MIN_VALUE;
+    
+    private long[] keys;
+    private long[] first;
+    private long[] second;
+    private int size;
+    private int mask;
+    
+    public LongPairHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+    
+    public void add(long key, long a, long b) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Unsupported key: " + key);
+        }
+        int slot = slotOf(key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            size++;
+        }
+        first[slot] += a;
+        second[slot] += b;
+        if (size * 4 > keys.length * 3) {
+            resize();
+        }
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public void forEach(Consumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                consumer.accept(keys[i], first[i], second[i]);
+            }
+        }
+    }
+    
+    private int slotOf(long key) {
+        int slot = (int) mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+    
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldFirst = first;
+        long[] oldSecond = second;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slotOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                first[slot] = oldFirst[i];
+                second[slot] = oldSecond[i];
+            }
+        }
+    }
+    
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        first = new long[capacity];
+        second = new long[capacity];
+        mask = capacity - 1;
+    }
+    
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+    
+    @FunctionalInterface
+    public interface Consumer {
+        void accept(long key, long first, long second);
+    }
+}
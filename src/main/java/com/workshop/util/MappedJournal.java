@@ -0,0 +1,236 @@
+package com.workshop.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+// 基于内存映射文件的分段追加日志。记录格式：长度(int) + CRC32C(int) + 序号(long) + 内容
+// 写入只进页缓存，force() 之后才算落盘；打开时按 CRC 截掉写了一半的尾部记录
+public class MappedJournal implements Closeable {
+    
+    private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES + Long.BYTES;
+    
+    private final Path directory;
+    private final String prefix;
+    private final int segmentSize;
+    
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment active;
+    private long lastSeq;
+    private final AtomicLong durableSeq = new AtomicLong();
+    
+    // 最近一次 force 覆盖到的位置，仅 force() 使用
+    private Segment forcedSegment;
+    private int forcedPosition;
+    
+    public MappedJournal(Path directory, String prefix, int segmentSize) {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.segmentSize = segmentSize;
+    }
+    
+    // 扫描已有分段，返回序号大于 afterSeq 的有效记录；之后的写入接在最后一个分段末尾
+    public synchronized List<Record> open(long afterSeq) throws IOException {
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(p -> p.getFileName().toString().startsWith(prefix + "-")
+                            && p.getFileName().toString().endsWith(".log"))
+                    .sorted()
+                    .toList();
+        }
+        
+        List<Record> records = new ArrayList<>();
+        lastSeq = afterSeq;
+        for (Path file : files) {
+            Segment segment = map(file);
+            segment.scan(records, afterSeq);
+            segments.add(segment);
+            lastSeq = Math.max(lastSeq, segment.lastSeq);
+        }
+        if (segments.isEmpty()) {
+            segments.add(map(segmentPath(lastSeq + 1)));
+        }
+        active = segments.get(segments.size() - 1);
+        forcedSegment = active;
+        forcedPosition = active.position;
+        durableSeq.set(lastSeq);
+        return records;
+    }
+    
+    // 仅写入映射内存，返回分配的序号；调用 force() 后才持久
+    public synchronized long append(byte[] payload) throws IOException {
+        int recordBytes = HEADER_BYTES + payload.length;
+        if (recordBytes + Integer.BYTES > segmentSize) {
+            throw new IOException("Journal record too large: " + payload.length + " bytes");
+        }
+        if (active.position + recordBytes + Integer.BYTES > segmentSize) {
+            roll();
+        }
+        long seq = ++lastSeq;
+        
+        CRC32C crc = new CRC32C();
+        byte[] seqBytes = longToBytes(seq);
+        crc.update(seqBytes);
+        crc.update(payload);
+        
+        MappedByteBuffer buffer = active.buffer;
+        int pos = active.position;
+        // 长度最后写，扫描时长度为 0 即视为结尾
+        buffer.putInt(pos + Integer.BYTES, (int) crc.getValue());
+        buffer.putLong(pos + Integer.BYTES * 2, seq);
+        buffer.put(pos + HEADER_BYTES, payload);
+        buffer.putInt(pos, payload.length);
+        active.position = pos + recordBytes;
+        active.lastSeq = seq;
+        return seq;
+    }
+    
+    // 将已写入的记录刷到磁盘，返回已持久的最大序号
+    public long force() {
+        Segment segment;
+        int from;
+        int to;
+        long seq;
+        synchronized (this) {
+            segment = active;
+            to = active.position;
+            seq = lastSeq;
+            from = segment == forcedSegment ? forcedPosition : 0;
+            forcedSegment = segment;
+            forcedPosition = to;
+        }
+        if (to > from) {
+            segment.buffer.force(from, to - from);
+        }
+        return durableSeq.accumulateAndGet(seq, Math::max);
+    }
+    
+    // 删除所有记录都不晚于 seq 的非活动分段
+    public synchronized int deleteSegmentsUpTo(long seq) throws IOException {
+        int deleted = 0;
+        while (segments.size() > 1 && segments.get(0).lastSeq <= seq) {
+            Segment segment = segments.remove(0);
+            segment.close();
+            Files.deleteIfExists(segment.path);
+            deleted++;
+        }
+        return deleted;
+    }
+    
+    public long getDurableSeq() {
+        return durableSeq.get();
+    }
+    
+    public synchronized long getLastSeq() {
+        return lastSeq;
+    }
+    
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+    
+    public synchronized long getBytesOnDisk() {
+        return (long) segments.size() * segmentSize;
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+    }
+    
+    // 切换分段前把旧分段完整刷盘，force() 之后只需关心新分段
+    private void roll() throws IOException {
+        active.buffer.force();
+        durableSeq.accumulateAndGet(active.lastSeq, Math::max);
+        Segment next = map(segmentPath(lastSeq + 1));
+        segments.add(next);
+        active = next;
+    }
+    
+    private Path segmentPath(long firstSeq) {
+        return directory.resolve(String.format("%s-%020d.log", prefix, firstSeq));
+    }
+    
+    private Segment map(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        return new Segment(path, channel, buffer);
+    }
+    
+    private static byte[] longToBytes(long value) {
+        byte[] bytes = new byte[Long.BYTES];
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            bytes[i] = (byte) value;
+            value >>>= 8;
+        }
+        return bytes;
+    }
+    
+    public record Record(long seq, byte[] payload) {
+    }
+    
+    private class Segment {
+        
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int position;
+        private long lastSeq;
+        
+        Segment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+        
+        void scan(List<Record> records, long afterSeq) {
+            int pos = 0;
+            while (pos + HEADER_BYTES + Integer.BYTES <= segmentSize) {
+                int length = buffer.getInt(pos);
+                if (length <= 0 || pos + HEADER_BYTES + length + Integer.BYTES > segmentSize) {
+                    break;
+                }
+                int storedCrc = buffer.getInt(pos + Integer.BYTES);
+                long seq = buffer.getLong(pos + Integer.BYTES * 2);
+                byte[] payload = new byte[length];
+                buffer.get(pos + HEADER_BYTES, payload);
+                
+                CRC32C crc = new CRC32C();
+                crc.update(longToBytes(seq));
+                crc.update(payload);
+                if ((int) crc.getValue() != storedCrc) {
+                    break;
+                }
+                if (seq > afterSeq) {
+                    records.add(new Record(seq, payload));
+                }
+                lastSeq = seq;
+                pos += HEADER_BYTES + length;
+            }
+            // 清掉损坏的尾部，避免之后的追加与旧数据拼接
+            for (int i = pos; i < Math.min(segmentSize, pos + HEADER_BYTES); i++) {
+                buffer.put(i, (byte) 0);
+            }
+            position = pos;
+        }
+        
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+}
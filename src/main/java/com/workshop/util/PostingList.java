@@ -0,0 +1,119 @@
+package com.workshop.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+// 倒排表：按文档序号递增追加 (序号差值, 词频)，两者都用变长整数编码，
+// 常见的小差值和小词频各占一个字节
+public class PostingList {
+    
+    private byte[] data = new byte[8];
+    private int size;
+    private int count;
+    private int lastDoc = -1;
+    
+    public void add(int doc, int freq) {
+        if (doc <= lastDoc) {
+            throw new IllegalArgumentException("Doc " + doc + " is not after " + lastDoc);
+        }
+        ensureCapacity(10);
+        writeVarInt(doc - lastDoc);
+        writeVarInt(freq);
+        lastDoc = doc;
+        count++;
+    }
+    
+    public int getCount() {
+        return count;
+    }
+    
+    public int getSizeInBytes() {
+        return size;
+    }
+    
+    public Cursor cursor() {
+        return new Cursor();
+    }
+    
+    // 去掉已删除文档的条目，返回新的倒排表
+    public PostingList compact(IntPredicate deleted) {
+        PostingList compacted = new PostingList();
+        Cursor cursor = cursor();
+        while (cursor.next()) {
+            if (!deleted.test(cursor.doc())) {
+                compacted.add(cursor.doc(), cursor.freq());
+            }
+        }
+        return compacted;
+    }
+    
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(count);
+        out.writeInt(lastDoc);
+        out.writeInt(size);
+        out.write(data, 0, size);
+    }
+    
+    public static PostingList read(DataInput in) throws IOException {
+        PostingList list = new PostingList();
+        list.count = in.readInt();
+        list.lastDoc = in.readInt();
+        list.size = in.readInt();
+        list.data = new byte[Math.max(8, list.size)];
+        in.readFully(list.data, 0, list.size);
+        return list;
+    }
+    
+    private void ensureCapacity(int extra) {
+        if (size + extra > data.length) {
+            data = Arrays.copyOf(data, Math.max(size + extra, data.length + (data.length >> 1)));
+        }
+    }
+    
+    private void writeVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            data[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[size++] = (byte) value;
+    }
+    
+    public class Cursor {
+        
+        private int position;
+        private int doc = -1;
+        private int freq;
+        
+        public boolean next() {
+            if (position >= size) {
+                return false;
+            }
+            doc += readVarInt();
+            freq = readVarInt();
+            return true;
+        }
+        
+        public int doc() {
+            return doc;
+        }
+        
+        public int freq() {
+            return freq;
+        }
+        
+        private int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.workshop.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// 搜索分词：先做 NFKC 归一化 (全角转半角) 并转小写，
+// 中日韩文字连续段切成相邻二元组 (单字段保留单字)，字母数字连续段作为一个词，其它字符视为分隔。
+// 建索引时额外收录每个中日韩单字，单字查询 (如 "龙") 才能命中多字标题
+public final class TextTokenizer {
+    
+    private static final int MAX_WORD_LENGTH = 32;
+    
+    private TextTokenizer() {
+    }
+    
+    public static List<String> tokenize(String text) {
+        return tokenize(text, false);
+    }
+    
+    public static List<String> tokenizeForIndex(String text) {
+        return tokenize(text, true);
+    }
+    
+    private static List<String> tokenize(String text, boolean unigrams) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        int[] codePoints = normalized.codePoints().toArray();
+        int i = 0;
+        while (i < codePoints.length) {
+            int start = i;
+            if (isCjk(codePoints[i])) {
+                while (i < codePoints.length && isCjk(codePoints[i])) {
+                    i++;
+                }
+                if (unigrams) {
+                    for (int j = start; j < i; j++) {
+                        tokens.add(new String(codePoints, j, 1));
+                    }
+                } else if (i - start == 1) {
+                    tokens.add(new String(codePoints, start, 1));
+                }
+                for (int j = start; j + 1 < i; j++) {
+                    tokens.add(new String(codePoints, j, 2));
+                }
+            } else if (Character.isLetterOrDigit(codePoints[i])) {
+                while (i < codePoints.length && Character.isLetterOrDigit(codePoints[i]) && !isCjk(codePoints[i])) {
+                    i++;
+                }
+                tokens.add(new String(codePoints, start, Math.min(i - start, MAX_WORD_LENGTH)));
+            } else {
+                i++;
+            }
+        }
+        return tokens;
+    }
+    
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -0,0 +1,90 @@
+-- 在 Hibernate 建表之后执行 (spring.jpa.defer-datasource-initialization)，所有语句须可重复执行
+
+-- 邀请码序号，经 InviteCodeGenerator 置换后生成邀请码
+CREATE SEQUENCE IF NOT EXISTS invite_code_seq START WITH 1 INCREMENT BY 1;
+
+-- 流水主键序列 (pooled，每次取 50 个号)；从 IDENTITY 迁移时需越过已有的最大 id
+CREATE SEQUENCE IF NOT EXISTS transactions_ledger_seq START WITH 1 INCREMENT BY 50;
+SELECT setval('transactions_ledger_seq', (SELECT MAX(id) FROM transactions))
+WHERE (SELECT MAX(id) FROM transactions) > (SELECT last_value FROM transactions_ledger_seq);
+
+-- 按类型筛选的流水分页索引，为已完成分区迁移的库补建；在分区父表上创建会同步到各分区
+CREATE INDEX IF NOT EXISTS idx_transactions_user_type_created ON transactions (user_id, type, created_at, id);
+
+-- 奖励日志检查点：每个节点已写入数据库的最大日志序号
+CREATE TABLE IF NOT EXISTS reward_journal_checkpoints (
+    node_id VARCHAR(100) PRIMARY KEY,
+    applied_seq BIGINT NOT NULL,
+    updated_at TIMESTAMP NOT NULL DEFAULT now()
+);
+
+-- 对账快照：每个用户截至高水位 id 的流水合计
+CREATE TABLE IF NOT EXISTS balance_snapshots (
+    user_id BIGINT PRIMARY KEY,
+    drops BIGINT NOT NULL DEFAULT 0,
+    lightning BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP NOT NULL DEFAULT now()
+);
+
+-- 对账高水位；candidate 为上次记录的序列值，稳定一段时间后才成为新的高水位
+CREATE TABLE IF NOT EXISTS balance_snapshot_state (
+    id INT PRIMARY KEY,
+    high_water_id BIGINT NOT NULL,
+    candidate_id BIGINT,
+    candidate_at TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT now()
+);
+INSERT INTO balance_snapshot_state (id, high_water_id) VALUES (1, 0) ON CONFLICT (id) DO NOTHING;
+-- 期初余额写入快照的时间，为空时下次对账先按当前余额建立期初快照
+ALTER TABLE balance_snapshot_state ADD COLUMN IF NOT EXISTS opened_at TIMESTAMP;
+
+-- 归档段索引：每个已归档月份的段文件及其 id / 用户 / 时间范围
+CREATE TABLE IF NOT EXISTS ledger_segments (
+    id BIGSERIAL PRIMARY KEY,
+    month DATE NOT NULL,
+    segment_no INT NOT NULL,
+    storage VARCHAR(20) NOT NULL,
+    location VARCHAR(500) NOT NULL,
+    row_count INT NOT NULL,
+    min_id BIGINT NOT NULL,
+    max_id BIGINT NOT NULL,
+    min_user_id BIGINT NOT NULL,
+    max_user_id BIGINT NOT NULL,
+    min_created_at TIMESTAMP NOT NULL,
+    max_created_at TIMESTAMP NOT NULL,
+    size_bytes BIGINT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT now(),
+    UNIQUE (month, segment_no)
+);
+CREATE INDEX IF NOT EXISTS idx_ledger_segments_user ON ledger_segments (min_user_id, max_user_id);
+
+CREATE TABLE IF NOT EXISTS ledger_archived_months (
+    month DATE PRIMARY KEY,
+    segment_count INT NOT NULL,
+    row_count BIGINT NOT NULL,
+    archived_at TIMESTAMP NOT NULL DEFAULT now()
+);
+
+-- 签到位图按日期加载当天已签到用户
+CREATE INDEX IF NOT EXISTS idx_daily_task_logs_checked_in ON daily_task_logs (date, user_id) WHERE is_checked_in;
+
+-- 签到历史：每个用户每年一行，第 n 位 (最左为 0) 表示当年第 n+1 天已签到
+CREATE TABLE IF NOT EXISTS checkin_history (
+    user_id BIGINT NOT NULL,
+    year INT NOT NULL,
+    bits BIT(366) NOT NULL,
+    PRIMARY KEY (user_id, year)
+);
+
+-- 热点账户余额分片：入账分散到多个槽位，定时或扣款前合并回 users.drops
+CREATE TABLE IF NOT EXISTS balance_shards (
+    user_id BIGINT NOT NULL,
+    slot INT NOT NULL,
+    drops BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (user_id, slot)
+);
+
+-- 等级曲线：下标即等级，值为所需闪电数 (LV0-LV20)，修改后需在后台触发等级重算
+INSERT INTO system_configs (key, value, description)
+VALUES ('level_thresholds', '0,0,200,500,800,1300,1800,2800,4000,5000,7000,9000,12000,15000,18000,23000,28000,35000,42000,50000,60000', '各等级所需闪电数')
+ON CONFLICT (key) DO NOTHING;
@@ -0,0 +1,155 @@
+package com.workshop.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// JwtAuthenticationFilter 单次请求耗时对比：旧实现每个请求验签三次并重建密钥和解析器，
+// 新实现一次 parseToken 并命中已验签缓存。类名不以 Test 结尾，默认构建不执行，手动运行：
+// mvn test -Dtest=JwtAuthenticationFilterBenchmark
+class JwtAuthenticationFilterBenchmark {
+    
+    private static final String SECRET = "benchmark-secret-key-for-jwt-filter-at-least-256-bits";
+    
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+    private static final int REQUESTS_PER_ROUND = 20_000;
+    
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+    
+    @Test
+    void comparePerRequestCost() throws Exception {
+        JwtTokenProvider cachedProvider = provider(10_000);
+        // 缓存容量为 0：每个请求都验签一次，对应缓存未命中的首个请求
+        JwtTokenProvider uncachedProvider = provider(0);
+        String token = cachedProvider.generateToken(42L, "benchmark", "USER");
+        TokenRevocationService revocation = new TokenRevocationService(null);
+        
+        OncePerRequestFilter legacy = new LegacyFilter(SECRET);
+        OncePerRequestFilter uncached = new JwtAuthenticationFilter(uncachedProvider, revocation);
+        OncePerRequestFilter cached = new JwtAuthenticationFilter(cachedProvider, revocation);
+        
+        double legacyNanos = measure("legacy triple parse", legacy, token);
+        double uncachedNanos = measure("single parse, cache miss", uncached, token);
+        double cachedNanos = measure("single parse, cache hit", cached, token);
+        
+        System.out.printf("JwtAuthenticationFilter speedup: %.1fx uncached, %.1fx cached%n",
+                legacyNanos / uncachedNanos, legacyNanos / cachedNanos);
+        assertThat(uncachedNanos).isLessThan(legacyNanos);
+        assertThat(cachedNanos).isLessThan(uncachedNanos);
+    }
+    
+    // 先预热再取多轮的中位数，输出每个请求的纳秒数
+    private double measure(String name, OncePerRequestFilter filter, String token) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/maps");
+        request.addHeader("Authorization", "Bearer " + token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            runRound(filter, request, response);
+        }
+        double[] perRequest = new double[MEASURED_ROUNDS];
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            long started = System.nanoTime();
+            runRound(filter, request, response);
+            perRequest[round] = (double) (System.nanoTime() - started) / REQUESTS_PER_ROUND;
+        }
+        Arrays.sort(perRequest);
+        double median = perRequest[MEASURED_ROUNDS / 2];
+        System.out.printf("%-28s median %10.0f ns/request (min %.0f, max %.0f)%n",
+                name, median, perRequest[0], perRequest[MEASURED_ROUNDS - 1]);
+        return median;
+    }
+    
+    private void runRound(OncePerRequestFilter filter, MockHttpServletRequest request,
+                          MockHttpServletResponse response) throws Exception {
+        for (int i = 0; i < REQUESTS_PER_ROUND; i++) {
+            // OncePerRequestFilter 按请求属性去重，每次换新的 FilterChain 并清掉标记
+            request.clearAttributes();
+            SecurityContextHolder.clearContext();
+            filter.doFilter(request, response, new MockFilterChain());
+            assertThat(SecurityContextHolder.getContext().getAuthentication()).isNotNull();
+        }
+    }
+    
+    private static JwtTokenProvider provider(int cacheSize) {
+        JwtTokenProvider provider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(provider, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(provider, "jwtExpiration", 3_600_000L);
+        ReflectionTestUtils.setField(provider, "cacheSize", cacheSize);
+        provider.init();
+        return provider;
+    }
+    
+    // 优化前的过滤器与 token 解析：validateToken、getUserIdFromToken、getRoleFromToken 各自重建密钥和解析器并验签
+    private static final class LegacyFilter extends OncePerRequestFilter {
+        
+        private final String jwtSecret;
+        
+        private LegacyFilter(String jwtSecret) {
+            this.jwtSecret = jwtSecret;
+        }
+        
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                        FilterChain filterChain) throws ServletException, IOException {
+            String bearerToken = request.getHeader("Authorization");
+            String jwt = bearerToken != null && bearerToken.startsWith("Bearer ") ? bearerToken.substring(7) : null;
+            if (jwt != null && validateToken(jwt)) {
+                Long userId = Long.parseLong(parse(jwt).getSubject());
+                String role = parse(jwt).get("role", String.class);
+                UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+                        userId, null, Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + role)));
+                SecurityContextHolder.getContext().setAuthentication(authentication);
+            }
+            filterChain.doFilter(request, response);
+        }
+        
+        private boolean validateToken(String token) {
+            try {
+                parse(token);
+                return true;
+            } catch (JwtException | IllegalArgumentException e) {
+                return false;
+            }
+        }
+        
+        private Claims parse(String token) {
+            return Jwts.parser()
+                    .verifyWith(signingKey())
+                    .build()
+                    .parseSignedClaims(token)
+                    .getPayload();
+        }
+        
+        private SecretKey signingKey() {
+            return Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.workshop.service;
+
+import com.workshop.entity.Transaction;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// 批量发放奖励的流水写入耗时对比：逐行 INSERT、LedgerAppender 多行 INSERT、COPY。
+// 需要 PostgreSQL，表和序列建在会话临时 schema 中并遮蔽同名正式表，不会写入真实流水。类名不以 Test 结尾，手动运行：
+// mvn test -Dtest=LedgerInsertBenchmark -Dbenchmark.db.url=jdbc:postgresql://localhost:5432/workshop
+//     -Dbenchmark.db.username=... -Dbenchmark.db.password=...
+class LedgerInsertBenchmark {
+    
+    private static final int[] BATCH_SIZES = {100, 1_000, 10_000};
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 7;
+    
+    private static final String CREATE_TABLE_SQL =
+            "CREATE TEMP TABLE transactions (id BIGINT PRIMARY KEY, user_id BIGINT NOT NULL, type VARCHAR(50) NOT NULL, " +
+            "change_drops INT NOT NULL, change_lightning INT NOT NULL, related_id BIGINT, description VARCHAR(255), " +
+            "created_at TIMESTAMP NOT NULL)";
+    
+    private static final String CREATE_INDEX_SQL =
+            "CREATE INDEX ON transactions (user_id, created_at, id)";
+    
+    private static final String CREATE_SEQUENCE_SQL =
+            "CREATE TEMP SEQUENCE transactions_ledger_seq START WITH 1 INCREMENT BY " + LedgerAppender.ID_ALLOCATION_SIZE;
+    
+    // 优化前每条流水单独保存 (IDENTITY 主键，逐条往返)
+    private static final String INSERT_ONE_SQL =
+            "INSERT INTO transactions (id, user_id, type, change_drops, change_lightning, related_id, description, created_at) " +
+            "VALUES (nextval('transactions_ledger_seq'), ?, ?, ?, ?, ?, ?, ?)";
+    
+    private static SingleConnectionDataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+    private static TransactionTemplate transactionTemplate;
+    
+    @BeforeAll
+    static void connect() {
+        String url = System.getProperty("benchmark.db.url");
+        assumeTrue(url != null && !url.isBlank(), "benchmark.db.url is not set, skipping ledger insert benchmark");
+        // 单连接：临时表只在该会话中可见
+        dataSource = new SingleConnectionDataSource(url, System.getProperty("benchmark.db.username", "postgres"),
+                System.getProperty("benchmark.db.password", ""), true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        jdbcTemplate.execute(CREATE_TABLE_SQL);
+        jdbcTemplate.execute(CREATE_INDEX_SQL);
+        jdbcTemplate.execute(CREATE_SEQUENCE_SQL);
+    }
+    
+    @AfterAll
+    static void disconnect() {
+        if (dataSource != null) {
+            dataSource.destroy();
+        }
+    }
+    
+    @Test
+    void compareBulkRewardWrites() {
+        LedgerAppender multiRow = appender(Integer.MAX_VALUE);
+        LedgerAppender copy = appender(1);
+        
+        for (int batchSize : BATCH_SIZES) {
+            double perRow = measure("per-row INSERT", batchSize, this::insertPerRow);
+            double multi = measure("multi-row INSERT", batchSize, entries -> multiRow.appendAll(entries));
+            double copied = measure("COPY", batchSize, entries -> copy.appendAll(entries));
+            System.out.printf("batch %6d: multi-row %.1fx, COPY %.1fx faster than per-row%n",
+                    batchSize, perRow / multi, perRow / copied);
+        }
+    }
+    
+    // 先预热再取多轮中位数，每轮在一个事务内写入一整批，之后清空表
+    private double measure(String name, int batchSize, BatchWriter writer) {
+        double[] millis = new double[MEASURED_ROUNDS];
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            List<Transaction> entries = rewardBatch(batchSize);
+            long started = System.nanoTime();
+            transactionTemplate.executeWithoutResult(status -> writer.write(entries));
+            long elapsed = System.nanoTime() - started;
+            Long rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM transactions", Long.class);
+            assertThat(rows).isEqualTo(batchSize);
+            jdbcTemplate.execute("TRUNCATE transactions");
+            if (round >= WARMUP_ROUNDS) {
+                millis[round - WARMUP_ROUNDS] = elapsed / 1_000_000.0;
+            }
+        }
+        Arrays.sort(millis);
+        double median = millis[MEASURED_ROUNDS / 2];
+        System.out.printf("batch %6d %-18s median %9.2f ms (%.1f us/row)%n",
+                batchSize, name, median, median * 1000 / batchSize);
+        return median;
+    }
+    
+    private void insertPerRow(List<Transaction> entries) {
+        for (Transaction entry : entries) {
+            jdbcTemplate.update(INSERT_ONE_SQL, entry.getUserId(), entry.getType().name(), entry.getChangeDrops(),
+                    entry.getChangeLightning(), entry.getRelatedId(), entry.getDescription(),
+                    Timestamp.valueOf(entry.getCreatedAt()));
+        }
+    }
+    
+    private static LedgerAppender appender(int copyThreshold) {
+        LedgerAppender appender = new LedgerAppender(jdbcTemplate);
+        ReflectionTestUtils.setField(appender, "copyThreshold", copyThreshold);
+        return appender;
+    }
+    
+    // 模拟一次批量发放：每个用户一条奖励流水，描述里带引号以覆盖 CSV 转义
+    private static List<Transaction> rewardBatch(int size) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Transaction> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Transaction entry = new Transaction();
+            entry.setUserId((long) (i + 1));
+            entry.setType(Transaction.TransactionType.SYS_GRANT);
+            entry.setChangeDrops(10);
+            entry.setChangeLightning(0);
+            entry.setRelatedId((long) i);
+            entry.setDescription("活动奖励 \"周年庆\"");
+            entry.setCreatedAt(now);
+            entries.add(entry);
+        }
+        return entries;
+    }
+    
+    @FunctionalInterface
+    private interface BatchWriter {
+        void write(List<Transaction> entries);
+    }
+}
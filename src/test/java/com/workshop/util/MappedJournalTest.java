@@ -0,0 +1,133 @@
+package com.workshop.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedJournalTest {
+    
+    // 长度(int) + CRC32C(int) + 序号(long)
+    private static final int HEADER_BYTES = 16;
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void replaysRecordsAfterCheckpoint() throws IOException {
+        try (MappedJournal journal = new MappedJournal(directory, "test", 4096)) {
+            assertThat(journal.open(0)).isEmpty();
+            for (int i = 1; i <= 10; i++) {
+                assertThat(journal.append(payload(i))).isEqualTo(i);
+            }
+            assertThat(journal.force()).isEqualTo(10);
+        }
+        
+        try (MappedJournal journal = new MappedJournal(directory, "test", 4096)) {
+            List<MappedJournal.Record> records = journal.open(6);
+            assertThat(records).extracting(MappedJournal.Record::seq).containsExactly(7L, 8L, 9L, 10L);
+            assertThat(text(records.get(0))).isEqualTo("grant-0007");
+            assertThat(journal.getDurableSeq()).isEqualTo(10);
+            // 新记录接着原有序号
+            assertThat(journal.append(payload(11))).isEqualTo(11);
+        }
+    }
+    
+    @Test
+    void truncatesTornTailAndAppendsAfterIt() throws IOException {
+        try (MappedJournal journal = new MappedJournal(directory, "test", 4096)) {
+            journal.open(0);
+            for (int i = 1; i <= 3; i++) {
+                journal.append(payload(i));
+            }
+        }
+        int recordBytes = HEADER_BYTES + payload(1).length;
+        // 第三条记录内容写了一半：CRC 对不上
+        corrupt(onlySegment(), 2 * recordBytes + HEADER_BYTES + 3);
+        
+        try (MappedJournal journal = new MappedJournal(directory, "test", 4096)) {
+            assertThat(journal.open(0)).extracting(MappedJournal.Record::seq).containsExactly(1L, 2L);
+            assertThat(journal.getLastSeq()).isEqualTo(2);
+            assertThat(journal.append(payload(3))).isEqualTo(3);
+            journal.force();
+        }
+        
+        try (MappedJournal journal = new MappedJournal(directory, "test", 4096)) {
+            List<MappedJournal.Record> records = journal.open(0);
+            assertThat(records).extracting(MappedJournal.Record::seq).containsExactly(1L, 2L, 3L);
+            assertThat(text(records.get(2))).isEqualTo("grant-0003");
+        }
+    }
+    
+    @Test
+    void rollsSegmentsAndDeletesAppliedOnes() throws IOException {
+        int recordBytes = HEADER_BYTES + payload(1).length;
+        // 每个分段放 4 条记录 (末尾需留出一个长度字段)
+        int segmentSize = recordBytes * 4 + Integer.BYTES;
+        try (MappedJournal journal = new MappedJournal(directory, "test", segmentSize)) {
+            journal.open(0);
+            for (int i = 1; i <= 10; i++) {
+                journal.append(payload(i));
+            }
+            // 切换分段时旧分段已整体落盘
+            assertThat(journal.getDurableSeq()).isEqualTo(8);
+            assertThat(journal.getSegmentCount()).isEqualTo(3);
+            journal.force();
+        }
+        assertThat(segmentFiles()).hasSize(3);
+        
+        try (MappedJournal journal = new MappedJournal(directory, "test", segmentSize)) {
+            assertThat(journal.open(3)).extracting(MappedJournal.Record::seq)
+                    .containsExactly(4L, 5L, 6L, 7L, 8L, 9L, 10L);
+            assertThat(journal.deleteSegmentsUpTo(7)).isEqualTo(1);
+            assertThat(journal.deleteSegmentsUpTo(8)).isEqualTo(1);
+            // 活动分段不删除
+            assertThat(journal.deleteSegmentsUpTo(10)).isZero();
+        }
+        
+        try (MappedJournal journal = new MappedJournal(directory, "test", segmentSize)) {
+            assertThat(journal.open(8)).extracting(MappedJournal.Record::seq).containsExactly(9L, 10L);
+            assertThat(journal.append(payload(11))).isEqualTo(11);
+        }
+    }
+    
+    private static byte[] payload(int i) {
+        return String.format("grant-%04d", i).getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static String text(MappedJournal.Record record) {
+        return new String(record.payload(), StandardCharsets.UTF_8);
+    }
+    
+    private Path onlySegment() throws IOException {
+        List<Path> files = segmentFiles();
+        assertThat(files).hasSize(1);
+        return files.get(0);
+    }
+    
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> list = Files.list(directory)) {
+            return list.filter(p -> p.getFileName().toString().endsWith(".log")).sorted().toList();
+        }
+    }
+    
+    private static void corrupt(Path file, long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, offset);
+            buffer.put(0, (byte) (buffer.get(0) ^ 0xFF));
+            buffer.rewind();
+            channel.write(buffer, offset);
+        }
+    }
+}